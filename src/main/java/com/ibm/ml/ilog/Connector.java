@@ -7,6 +7,8 @@ import com.ibm.json.java.JSONObject;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 
 /* A WML interface */
@@ -27,6 +29,16 @@ public interface Connector extends TokenHandler {
         return "PythonWithWML.";
     }
 
+    /* Name of the deployment used by WmlCplex and WmlCP for a runtime and a size. */
+    static String getDeploymentName(Runtime runtime, TShirtSize size, int nodes, boolean isCplex) {
+        return (isCplex ? getCplexPrefix() : getCPOPrefix()) + runtime + "." + size + "." + nodes;
+    }
+
+    /* Name of the deployment of the WmlCplex worker, which populates the solution pool, for a runtime and a size. */
+    static String getWorkerDeploymentName(Runtime runtime, TShirtSize size, int nodes) {
+        return getPythonPrefix() + "CplexWorker." + runtime + "." + size + "." + nodes;
+    }
+
     /* Creates a connector */
     static Connector getConnector(Credentials creds, Connector.Runtime runtime, Connector.TShirtSize size, int nodes, String format) throws IloException {
         return new com.ibm.ml.ilog.v4.Connector(creds, runtime, size, nodes, format);
@@ -126,6 +138,20 @@ public interface Connector extends TokenHandler {
         throw new IloException("Runtime " + r + " is not supported currently");
     }
 
+    static ModelType getDOCPLEXModelType(Runtime r) throws IloException {
+        switch (r) {
+            case DO_12_9:
+                return ModelType.DOCPLEX_12_9;
+            case DO_12_10:
+                return ModelType.DOCPLEX_12_10;
+            case DO_20_1:
+                return ModelType.DOCPLEX_20_1;
+            case DO_22_1:
+                return ModelType.DOCPLEX_22_1;
+        }
+        throw new IloException("Runtime " + r + " is not supported currently");
+    }
+
     enum TShirtSize {
         S("S"),
         M("M"),
@@ -146,6 +172,17 @@ public interface Connector extends TokenHandler {
 
     String getOrMakeDeployment(String name, boolean isCplex) throws IloException;
 
+    /*
+    Creates or resolves the deployment used for a runtime and a size, and optionally runs a trivial job on it,
+    so that the first real solve does not pay for the runtime start.
+     */
+    String prewarm(Runtime runtime, TShirtSize size, int nodes, boolean isCplex) throws IloException;
+
+    /*
+    Prewarms in parallel all the deployments listed in wmlconnector.v4.prewarm.deployments.
+     */
+    List<String> prewarm() throws IloException;
+
     String createNewModel(String modelName, Runtime runtime, ModelType type, String modelAssetFilePath, HashMap<String,String> custom) throws IloException;
 
     String deployModel(String deployName, String model_id, TShirtSize size, int nodes) throws IloException;
@@ -167,9 +204,27 @@ public interface Connector extends TokenHandler {
                         JSONArray input_data_references,
                         JSONArray output_data,
                         JSONArray output_data_references, HashMap<String,String> custom) throws IloException;
+    /*
+    Creates the job and returns without waiting for it.
+    The future completes when the job is over, cancelling it deletes the WML job.
+     */
+    CompletableFuture<Job> submitJobAsync(String deployment_id,
+                                          JSONArray input_data,
+                                          JSONArray input_data_references,
+                                          JSONArray output_data,
+                                          JSONArray output_data_references, HashMap<String,String> custom) throws IloException;
+
     Job createAndRunJob(String deployment_id,
                         JSONArray input_data_references,
                         JSONArray output_data_references, HashMap<String,String> custom) throws IloException;
+
+    /*
+    The listener receives the progress of the running jobs of this connector at each status check.
+     */
+    void addProgressListener(ProgressListener listener);
+
+    void removeProgressListener(ProgressListener listener);
+
     JSONObject getDeployments() throws IloException;
 
     JSONObject getModels() throws IloException;
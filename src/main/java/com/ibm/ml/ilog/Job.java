@@ -4,12 +4,17 @@ import com.ibm.json.java.JSONArray;
 import com.ibm.json.java.JSONObject;
 import ilog.concert.IloException;
 
+import java.io.InputStream;
 import java.util.HashMap;
 
 /* A simple interface to WML Jobs. */
 public interface Job {
+    /* Refreshes the whole job, output data included. */
     void updateStatus() throws IloException;
 
+    /* Refreshes the status and the solve state only, the output data is not downloaded. */
+    void updateState() throws IloException;
+
     String getId();
 
     JSONObject getStatus();
@@ -34,10 +39,25 @@ public interface Job {
 
     HashMap<String, Object> getKPIs();
 
+    /* The progress of the job at its last status check. */
+    Progress getProgress();
+
+    /* Msec between the creation of the job and the start of its run, -1 if unknown. */
+    long getQueueTime();
+
+    /* Msec of the run of the job in WML, -1 if unknown. */
+    long getRunTime();
+
+    /* Msec of the download of the output data of the job, -1 if not downloaded yet. */
+    long getDownloadTime();
+
     JSONArray extractOutputData();
 
     String getLog();
 
     String getSolution();
+
+    /* The decoded solution.xml or solution.json file, read on the fly from the output data. Null if there is none. */
+    InputStream getSolutionStream();
 }
 
@@ -0,0 +1,46 @@
+package com.ibm.ml.ilog;
+
+/*
+The progress of a WML job, as reported by the engine at the last status check.
+The same object is updated at each check of a job: copy the values to keep them.
+ */
+public interface Progress {
+    String getJobId();
+
+    /* The WML state of the job: queued, running, completed... */
+    String getState();
+
+    /* Msec since the job was submitted. */
+    long getElapsedTime();
+
+    /* Objective of the incumbent, NaN if there is none. */
+    double getObjective();
+
+    /* Best bound of the objective, NaN if unknown. */
+    double getBestBound();
+
+    /* Relative gap between the incumbent and the best bound, NaN if unknown. */
+    double getGap();
+
+    /* Msec since the objective of the incumbent last changed, -1 if there is no incumbent. */
+    long getTimeSinceImprovement();
+
+    int getNumKPIs();
+
+    String getKPIName(int i);
+
+    Object getKPIValue(int i);
+
+    /* Value of a numeric KPI, NaN if the KPI is unknown. */
+    double getKPI(String name);
+
+    /* Number of lines of the latest engine activity, the tail of the engine log. */
+    int getNumLogLines();
+
+    String getLogLine(int i);
+
+    /* Asks for the job to be cancelled: its incumbent, if any, is still returned. */
+    void abort();
+
+    boolean isAborted();
+}
@@ -0,0 +1,10 @@
+package com.ibm.ml.ilog;
+
+/*
+Receives the progress of the jobs of a connector at each status check, while they are running.
+It is called from the thread which polls the job: it must return quickly.
+Call progress.abort() to stop the job, for instance once the gap is small enough.
+ */
+public interface ProgressListener {
+    void progress(Progress progress);
+}
@@ -0,0 +1,70 @@
+package com.ibm.ml.ilog;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+Stops a running job from the client once a condition holds on its progress: the job is cancelled and the solve
+returns its incumbent. The condition is checked at each status check of the job, so a job can run a polling delay
+longer than needed.
+Register a policy as a progress listener of the connector, WmlCplex or WmlCP.
+ */
+public abstract class TerminationPolicy implements ProgressListener {
+    private static final Logger logger = LogManager.getLogger();
+
+    /* True if the job must be stopped. */
+    protected abstract boolean shouldStop(Progress progress);
+
+    @Override
+    public final void progress(Progress progress) {
+        if (!progress.isAborted() && shouldStop(progress)) {
+            logger.info("Stopping job " + progress.getJobId() + ": " + this);
+            progress.abort();
+        }
+    }
+
+    /* Stops once the relative gap is at most gap. */
+    public static TerminationPolicy gapBelow(final double gap) {
+        return new TerminationPolicy() {
+            @Override
+            protected boolean shouldStop(Progress progress) {
+                return progress.getGap() <= gap;
+            }
+
+            @Override
+            public String toString() {
+                return "gap below " + gap;
+            }
+        };
+    }
+
+    /* Stops once the incumbent has not changed for msec. */
+    public static TerminationPolicy noImprovement(final long msec) {
+        return new TerminationPolicy() {
+            @Override
+            protected boolean shouldStop(Progress progress) {
+                return progress.getTimeSinceImprovement() >= msec;
+            }
+
+            @Override
+            public String toString() {
+                return "no improvement for " + msec + " msec";
+            }
+        };
+    }
+
+    /* Stops the job msec after it was submitted, whether it has a solution or not. */
+    public static TerminationPolicy deadline(final long msec) {
+        return new TerminationPolicy() {
+            @Override
+            protected boolean shouldStop(Progress progress) {
+                return progress.getElapsedTime() >= msec;
+            }
+
+            @Override
+            public String toString() {
+                return "deadline of " + msec + " msec";
+            }
+        };
+    }
+}
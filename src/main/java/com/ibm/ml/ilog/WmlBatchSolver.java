@@ -0,0 +1,246 @@
+package com.ibm.ml.ilog;
+
+import com.ibm.ml.ilog.utils.DaemonThreadFactory;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import ilog.concert.IloException;
+import ilog.cp.IloCP;
+import ilog.cp.WmlCP;
+import ilog.cplex.IloCplex;
+import ilog.cplex.WmlCplex;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+
+/*
+Solves many models, or many scenarios of a model, in parallel.
+The models are created and exported on a small pool of export_threads threads, and their jobs are submitted and
+tracked asynchronously: a job in flight holds no thread. Up to max_in_flight jobs run at the same time, the next
+exports wait for a free slot. The solutions are read on a pool of the same size as the export one.
+The wall time of a sweep is close to the one of its slowest solves instead of their sum.
+The futures complete as soon as their solve is over, in any order.
+Cancelling a future cancels its solve: a WML job is deleted, also when it is submitted once the cancelled model is
+exported.
+ */
+public class WmlBatchSolver implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger();
+
+    /*
+    Starts the solve of a model, the future completes with true if a solution was found.
+    Cancelling the future must cancel the solve.
+     */
+    public interface Solver<M> {
+        CompletableFuture<Boolean> submit(M model, Executor executor) throws IloException;
+    }
+
+    /* Creates a new model for a scenario. */
+    public interface ModelFactory<M> {
+        M create() throws IloException;
+    }
+
+    /* Changes a model before it is solved, for example its bounds. */
+    public interface Scenario<M> {
+        void apply(M model) throws IloException;
+    }
+
+    /* The WML models are submitted, the others are solved on the export thread. */
+    public static final Solver<IloCplex> CPLEX = new Solver<IloCplex>() {
+        @Override
+        public CompletableFuture<Boolean> submit(IloCplex model, Executor executor) throws IloException {
+            if (model instanceof WmlCplex)
+                return ((WmlCplex) model).submit(executor);
+            return CompletableFuture.completedFuture(model.solve());
+        }
+    };
+
+    public static final Solver<IloCP> CPO = new Solver<IloCP>() {
+        @Override
+        public CompletableFuture<Boolean> submit(IloCP model, Executor executor) throws IloException {
+            if (model instanceof WmlCP)
+                return ((WmlCP) model).submit(executor);
+            return CompletableFuture.completedFuture(model.solve());
+        }
+    };
+
+    /* The outcome of the solve of one model. */
+    public static class Result<M> {
+        private final int index;
+        private final M model;
+        private final boolean feasible;
+
+        Result(int index, M model, boolean feasible) {
+            this.index = index;
+            this.model = model;
+            this.feasible = feasible;
+        }
+
+        /* Position of the model or scenario in the batch. */
+        public int getIndex() {
+            return index;
+        }
+
+        /* The solved model, to query its solution. */
+        public M getModel() {
+            return model;
+        }
+
+        public boolean isFeasible() {
+            return feasible;
+        }
+    }
+
+    private final ExecutorService exporter;
+    private final ExecutorService reader;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+
+    public WmlBatchSolver() {
+        this(ConfigFactory.parseResources("resources.conf").resolve());
+    }
+
+    public WmlBatchSolver(Config config) {
+        this(config.getInt("wmlconnector.v4.batch.max_in_flight"), config.getInt("wmlconnector.v4.batch.export_threads"));
+    }
+
+    public WmlBatchSolver(int maxInFlight, int exportThreads) {
+        if (maxInFlight <= 0)
+            throw new IllegalArgumentException("Bad number of jobs in flight: " + maxInFlight);
+        if (exportThreads <= 0)
+            throw new IllegalArgumentException("Bad number of export threads: " + exportThreads);
+        this.maxInFlight = maxInFlight;
+        inFlight = new Semaphore(maxInFlight);
+        exporter = Executors.newFixedThreadPool(exportThreads, new DaemonThreadFactory("wml-batch-export"));
+        reader = Executors.newFixedThreadPool(exportThreads, new DaemonThreadFactory("wml-batch-read"));
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /*
+    Solves each model of the list, the futures are in the order of the list.
+     */
+    public <M> List<CompletableFuture<Result<M>>> solve(List<M> models, Solver<M> solver) {
+        logger.info("Solving a batch of " + models.size() + " models, " + maxInFlight + " at most at the same time.");
+        List<CompletableFuture<Result<M>>> ret = new ArrayList<>(models.size());
+        for (int i = 0; i < models.size(); i++)
+            ret.add(submit(new Task<>(i, models.get(i), null, null, solver)));
+        return ret;
+    }
+
+    /*
+    Creates a model per scenario with the factory, applies the scenario to it and solves it.
+    The models are created on the export threads too. They are not ended: call end on the models of the results.
+     */
+    public <M> List<CompletableFuture<Result<M>>> solve(ModelFactory<M> factory, List<? extends Scenario<M>> scenarios, Solver<M> solver) {
+        logger.info("Solving a batch of " + scenarios.size() + " scenarios, " + maxInFlight + " at most at the same time.");
+        List<CompletableFuture<Result<M>>> ret = new ArrayList<>(scenarios.size());
+        for (int i = 0; i < scenarios.size(); i++)
+            ret.add(submit(new Task<>(i, null, factory, scenarios.get(i), solver)));
+        return ret;
+    }
+
+    /*
+    Waits for all the solves of a batch and returns their results in order.
+     */
+    public static <M> List<Result<M>> join(List<CompletableFuture<Result<M>>> futures) {
+        List<Result<M>> ret = new ArrayList<>(futures.size());
+        for (CompletableFuture<Result<M>> future : futures)
+            ret.add(future.join());
+        return ret;
+    }
+
+    private <M> CompletableFuture<Result<M>> submit(Task<M> task) {
+        exporter.execute(task);
+        return task.future;
+    }
+
+    private class Task<M> implements Runnable {
+        private final int index;
+        private final M model;
+        private final ModelFactory<M> factory;
+        private final Scenario<M> scenario;
+        private final Solver<M> solver;
+        private final CompletableFuture<Result<M>> future = new CompletableFuture<>();
+
+        Task(int index, M model, ModelFactory<M> factory, Scenario<M> scenario, Solver<M> solver) {
+            this.index = index;
+            this.model = model;
+            this.factory = factory;
+            this.scenario = scenario;
+            this.solver = solver;
+        }
+
+        @Override
+        public void run() {
+            if (future.isCancelled())
+                return;
+            try {
+                // The export waits for a free slot, so that the exported models do not pile up.
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(false);
+                return;
+            }
+            if (future.isCancelled()) {
+                inFlight.release();
+                return;
+            }
+            try {
+                final M m = model != null ? model : factory.create();
+                if (scenario != null)
+                    scenario.apply(m);
+                final CompletableFuture<Boolean> solving = solver.submit(m, reader);
+                // Also when the future was cancelled while the model was exported.
+                future.whenComplete(new BiConsumer<Result<M>, Throwable>() {
+                    @Override
+                    public void accept(Result<M> result, Throwable error) {
+                        if (future.isCancelled())
+                            solving.cancel(true);
+                    }
+                });
+                solving.whenComplete(new BiConsumer<Boolean, Throwable>() {
+                    @Override
+                    public void accept(Boolean feasible, Throwable error) {
+                        inFlight.release();
+                        if (future.isCancelled())
+                            logger.info("Solve " + index + " of the batch cancelled.");
+                        else if (error == null)
+                            future.complete(new Result<>(index, m, feasible));
+                        else
+                            fail(error);
+                    }
+                });
+            } catch (Exception e) {
+                inFlight.release();
+                fail(e);
+            }
+        }
+
+        private void fail(Throwable error) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            logger.error("Solve " + index + " of the batch failed: " + cause.getMessage());
+            future.completeExceptionally(cause);
+        }
+    }
+
+    /*
+    Stops the batch threads, the exports in progress are interrupted.
+    To be called once the futures are over: the jobs still in flight run to their end but are neither read nor deleted.
+     */
+    @Override
+    public void close() {
+        exporter.shutdownNow();
+        reader.shutdown();
+    }
+}
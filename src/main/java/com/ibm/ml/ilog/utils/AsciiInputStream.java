@@ -0,0 +1,56 @@
+package com.ibm.ml.ilog.utils;
+
+import java.io.InputStream;
+import java.util.Base64;
+
+/*
+Reads the characters of an ascii string (such as base64 content) as bytes, without copying the string.
+ */
+public class AsciiInputStream extends InputStream {
+    private final String content;
+    private int position = 0;
+
+    public AsciiInputStream(String content) {
+        this.content = content;
+    }
+
+    /*
+    Decodes the base64 content on the fly.
+     */
+    public static InputStream decodeBase64(String encoded) {
+        return Base64.getDecoder().wrap(new AsciiInputStream(encoded));
+    }
+
+    @Override
+    public int read() {
+        if (position >= content.length())
+            return -1;
+        return content.charAt(position++) & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0)
+            return 0;
+        int remaining = content.length() - position;
+        if (remaining <= 0)
+            return -1;
+        int n = Math.min(len, remaining);
+        for (int i = 0; i < n; i++)
+            b[off + i] = (byte) content.charAt(position + i);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, content.length() - position));
+        position += (int) skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return content.length() - position;
+    }
+}
@@ -0,0 +1,194 @@
+package com.ibm.ml.ilog.utils;
+
+import com.typesafe.config.Config;
+import ilog.concert.IloException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Where the models and their side files are exported before being sent.
+The engines which can export to a stream, like CP Optimizer, write into a heap buffer which is base64 encoded
+directly into the payload. The others, like CPLEX which only writes to a file name, write into the temporary
+directory, or into export.directory (for example /dev/shm) when it has at least export.min_free bytes available.
+An export which fails there, for example because the directory is full, is done again in the temporary directory.
+A buffer is only written to a file when a file is really needed, for example to race it against several deployments.
+When the model cache is enabled, the buffers are hashed while being written, so that the cache does not read them again.
+All the files are deleted when the sink is closed.
+ */
+public final class ExportSink implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger();
+
+    /* An export to a file name. */
+    public interface Export {
+        void to(String path) throws IloException;
+    }
+
+    /* An in-memory export, its bytes are used without copy. */
+    public final class Buffer extends ByteArrayOutputStream {
+        private final String suffix;
+        private final MessageDigest digest;
+        private byte[] hash = null;
+        private File file = null;
+
+        private Buffer(String suffix, int size, MessageDigest digest) {
+            super(size);
+            this.suffix = suffix;
+            this.digest = digest;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            super.write(b);
+            if (digest != null)
+                digest.update((byte) b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            super.write(b, off, len);
+            if (digest != null)
+                digest.update(b, off, len);
+        }
+
+        @Override
+        public synchronized void reset() {
+            super.reset();
+            if (digest != null)
+                digest.reset();
+            hash = null;
+        }
+
+        /* The SHA-256 of the content, null if the buffer is not hashed. Nothing must be written after. */
+        public synchronized byte[] getDigest() {
+            if (hash == null && digest != null)
+                hash = digest.digest();
+            return hash;
+        }
+
+        /* The internal array, only the first size() bytes are valid. */
+        public synchronized byte[] getBytes() {
+            return buf;
+        }
+
+        /*
+        The buffer written to a file of the sink, once.
+         */
+        public synchronized File getFile() throws IOException {
+            if (file == null) {
+                File f = newFile(suffix);
+                try (OutputStream out = new FileOutputStream(f)) {
+                    writeTo(out);
+                }
+                file = f;
+            }
+            return file;
+        }
+    }
+
+    private final String prefix;
+    private final boolean hash;
+    private final long minFree;
+    // Null for the temporary directory, also once an export failed in the configured one.
+    private File directory;
+    private final List<File> files = new ArrayList<>();
+
+    public ExportSink(String prefix, Config config) {
+        this.prefix = prefix;
+        this.hash = config.getBoolean("wmlconnector.v4.model_cache.enabled");
+        this.minFree = config.getLong("wmlconnector.v4.export.min_free");
+        String path = config.getString("wmlconnector.v4.export.directory");
+        this.directory = path.isEmpty() ? null : new File(path);
+    }
+
+    /*
+    The configured directory if it has enough space left, null for the temporary directory.
+     */
+    private synchronized File getDirectory() {
+        if (directory != null && directory.getUsableSpace() < minFree) {
+            logger.info("Less than " + minFree + " bytes available in " + directory + ": exporting in the temporary directory");
+            directory = null;
+        }
+        return directory;
+    }
+
+    /*
+    A new empty file in the export directory.
+     */
+    public File newFile(String suffix) throws IOException {
+        File ret = File.createTempFile(prefix, suffix, getDirectory());
+        synchronized (files) {
+            files.add(ret);
+        }
+        return ret;
+    }
+
+    /*
+    Runs an export to a new file. If it fails outside of the temporary directory, the next exports of the sink go to
+    the temporary directory, starting with this one.
+     */
+    public File export(String suffix, Export export) throws IloException {
+        File ret = newIloFile(suffix);
+        try {
+            export.to(ret.getAbsolutePath());
+            return ret;
+        } catch (IloException e) {
+            synchronized (this) {
+                if (directory == null || !directory.equals(ret.getParentFile()))
+                    throw e;
+                logger.warn("Cannot export " + ret + " (" + e.getMessage() + "): exporting in the temporary directory");
+                directory = null;
+            }
+            delete(ret);
+        }
+        ret = newIloFile(suffix);
+        export.to(ret.getAbsolutePath());
+        return ret;
+    }
+
+    private File newIloFile(String suffix) throws IloException {
+        try {
+            return newFile(suffix);
+        } catch (IOException e) {
+            throw new IloException("Cannot create the " + suffix + " export file: " + e.getMessage());
+        }
+    }
+
+    public Buffer newBuffer(String suffix) {
+        MessageDigest digest = null;
+        if (hash) {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                logger.warn("Cannot hash the exports: " + e.getMessage());
+            }
+        }
+        return new Buffer(suffix, 64 * 1024, digest);
+    }
+
+    private static void delete(File f) {
+        if (!f.delete() && f.exists())
+            logger.warn("Cannot delete " + f.getAbsolutePath());
+    }
+
+    /*
+    Deletes the files of the sink.
+     */
+    @Override
+    public void close() {
+        synchronized (files) {
+            for (File f : files)
+                delete(f);
+            files.clear();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.ibm.ml.ilog.utils;
+
+import com.typesafe.config.Config;
+import ilog.concert.IloException;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+Process wide registry of http clients.
+All the connectors borrow a client from here: connections are pooled and kept alive between calls and solves,
+and the TLS sessions are reused as all the connections to a host share the same SSL context.
+There is one client per ssl context, pool size and idle timeout: connectors with other settings get their own pool.
+The clients must not be closed by the connectors, use shutdown to release everything.
+ */
+public final class HttpClientRegistry {
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final Map<String, PooledClient> clients = new HashMap<>();
+
+    private static ScheduledExecutorService evictor = null;
+    // Seconds between two checks of the idle connections.
+    private static final int EVICTION_PERIOD = 5;
+
+    private HttpClientRegistry() {
+    }
+
+    private static class PooledClient {
+        final PoolingHttpClientConnectionManager manager;
+        final CloseableHttpClient client;
+        // Seconds, 0 to keep the idle connections.
+        final int idleTimeout;
+
+        PooledClient(PoolingHttpClientConnectionManager manager, CloseableHttpClient client, int idleTimeout) {
+            this.manager = manager;
+            this.client = client;
+            this.idleTimeout = idleTimeout;
+        }
+    }
+
+    private static class MyX509TrustManager implements X509TrustManager {
+        public MyX509TrustManager() {
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] var1, String var2) throws CertificateException {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] var1, String var2) throws CertificateException {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return null;
+        }
+    }
+
+    private static class IdleEvictor implements Runnable {
+        @Override
+        public void run() {
+            synchronized (HttpClientRegistry.class) {
+                for (PooledClient pooled : clients.values()) {
+                    pooled.manager.closeExpiredConnections();
+                    if (pooled.idleTimeout > 0)
+                        pooled.manager.closeIdleConnections(pooled.idleTimeout, TimeUnit.SECONDS);
+                }
+            }
+        }
+    }
+
+    /*
+    Returns the shared client for the ssl context and the pool settings of the config, creating it if needed.
+     */
+    public static synchronized CloseableHttpClient getClient(Config config) throws IloException {
+        String sslContextName = config.getString("wmlconnector.v4.ssl_context");
+        int maxTotal = config.getInt("wmlconnector.v4.http.max_connections");
+        int maxPerRoute = config.getInt("wmlconnector.v4.http.max_connections_per_host");
+        int idleTimeout = config.getInt("wmlconnector.v4.http.idle_timeout");
+        if (idleTimeout < 0)
+            throw new IloException("Bad http idle timeout: " + idleTimeout);
+        String key = sslContextName + "/" + maxTotal + "/" + maxPerRoute + "/" + idleTimeout;
+        PooledClient pooled = clients.get(key);
+        if (pooled == null) {
+            pooled = createClient(sslContextName, maxTotal, maxPerRoute, idleTimeout);
+            clients.put(key, pooled);
+            startEvictor();
+        }
+        return pooled.client;
+    }
+
+    private static PooledClient createClient(String sslContextName, int maxTotal, int maxPerRoute, int idleTimeout) throws IloException {
+        try {
+            SSLContext sslContext = SSLContext.getInstance(sslContextName);
+            TrustManager[] managers = new TrustManager[]{new MyX509TrustManager()};
+            sslContext.init(null, managers, new SecureRandom());
+
+            Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("https", new SSLConnectionSocketFactory(sslContext, SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER))
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .build();
+            PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager(registry);
+            manager.setMaxTotal(maxTotal);
+            manager.setDefaultMaxPerRoute(maxPerRoute);
+
+            logger.info("Creating a shared " + sslContextName + " http client with " + maxTotal + " connections, " + maxPerRoute + " per host"
+                    + (idleTimeout > 0 ? ", closed after " + idleTimeout + " idle seconds." : ", never closed when idle."));
+            return new PooledClient(manager, HttpClients.custom().setConnectionManager(manager).build(), idleTimeout);
+        } catch (KeyManagementException e) {
+            throw new IloException(e.getMessage());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IloException(e.getMessage());
+        }
+    }
+
+    private static void startEvictor() {
+        if (evictor != null)
+            return;
+        evictor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("wml-http-evictor"));
+        evictor.scheduleWithFixedDelay(new IdleEvictor(), EVICTION_PERIOD, EVICTION_PERIOD, TimeUnit.SECONDS);
+    }
+
+    /*
+    Closes all the shared clients and their connections.
+     */
+    public static synchronized void shutdown() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+            evictor = null;
+        }
+        for (PooledClient pooled : clients.values()) {
+            try {
+                pooled.client.close();
+            } catch (IOException e) {
+                logger.warn("Ignoring issue when closing the http client: " + e.getMessage());
+            }
+        }
+        clients.clear();
+    }
+}
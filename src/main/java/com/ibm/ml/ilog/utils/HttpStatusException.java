@@ -0,0 +1,25 @@
+package com.ibm.ml.ilog.utils;
+
+import ilog.concert.IloException;
+
+/*
+Error answered by a WML or platform endpoint, with its http status.
+ */
+public class HttpStatusException extends IloException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public HttpStatusException(int statusCode, String msg) {
+        super(msg);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isNotFound() {
+        return statusCode == 404;
+    }
+}
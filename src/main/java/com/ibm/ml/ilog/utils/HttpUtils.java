@@ -10,27 +10,18 @@ import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import ilog.concert.IloException;
 import org.apache.http.HttpEntity;
+import org.apache.http.client.entity.GzipCompressingEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.*;
-import org.apache.http.conn.ssl.AllowAllHostnameVerifier;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
 import java.util.*;
 
 
@@ -41,6 +32,9 @@ public class HttpUtils implements TokenHandler {
     protected final int tokenRefreshRate = config.getInt("wmlconnector.v4.refresh_rate") * 60 * 1000;
 
     protected String sslContextName = config.getString("wmlconnector.v4.ssl_context");
+    protected final RequestLogger requestLogger = new RequestLogger(config);
+    // Job requests at least this big are sent with Content-Encoding: gzip, 0 to never compress them.
+    private final long compressRequestMinSize = config.getLong("wmlconnector.v4.compression.request_min_size");
     protected final Credentials wml_credentials;
 
 
@@ -95,6 +89,7 @@ public class HttpUtils implements TokenHandler {
     protected final String PUT = "PUT";
     protected final String GET = "GET";
     protected final String DELETE = "DELETE";
+    protected final String HEAD = "HEAD";
     protected final String ML_Instance_ID = "ML-Instance-ID";
     protected final String CACHE_CONTROL = "cache-control";
     protected final String NO_CACHE = "no-cache";
@@ -102,11 +97,13 @@ public class HttpUtils implements TokenHandler {
     public final String SPACE_ID = "space_id";
 
 
-    private CloseableHttpClient httpClient = null;//createHttpsClient();
+    private volatile CloseableHttpClient httpClient = null;
 
-    protected String bearerToken;
-
-    protected Timer timer = null;
+    // Shared with the other connectors using the same credentials.
+    private volatile TokenManager tokenManager = null;
+    // Guarded by tokenLock: initToken is called concurrently, for example by the prewarm threads.
+    private final Object tokenLock = new Object();
+    private boolean tokenAcquired = false;
 
     public static JSONObject parseJson(String input){
         try {
@@ -117,6 +114,7 @@ public class HttpUtils implements TokenHandler {
         }
     }
     protected String getAuth() {
+        String bearerToken = tokenManager == null ? null : tokenManager.peek();
         if (bearerToken == null)
             logger.warn("Token is empty...");
         return BEARER + " " + bearerToken;
@@ -127,6 +125,10 @@ public class HttpUtils implements TokenHandler {
     }
 
 
+    public RequestLogger getRequestLogger() {
+        return requestLogger;
+    }
+
     public Map<String, String> getPlatformParams() {
         Map<String, String> params = new LinkedHashMap<>();
         params.put(VERSION, wml_credentials.get(Credentials.WML_VERSION));
@@ -151,38 +153,40 @@ public class HttpUtils implements TokenHandler {
         return headers;
     }
 
-    private class TokenTimer extends TimerTask {
-        public TokenTimer() {
-        }
-
-        @Override
-        public void run() {
-            try {
-                lookupToken();
-            } catch (IloException e) {
-                throw new RuntimeException(e.getMessage());
-            }
-        }
-    }
-
+    /*
+    Thread safe: the connector registers once as a user of the token, the concurrent lookups are coalesced by the
+    token manager.
+     */
     @Override
     public void initToken() throws IloException {
-        if (httpClient == null)
-            httpClient = createHttpsClient();
-        if (bearerToken != null)
-            return;
-        lookupToken();
-        timer = new Timer();
-        timer.scheduleAtFixedRate(new TokenTimer(), tokenRefreshRate, tokenRefreshRate);
+        TokenManager manager;
+        synchronized (tokenLock) {
+            if (httpClient == null)
+                httpClient = HttpClientRegistry.getClient(config);
+            if (!tokenAcquired) {
+                // Looked up again after a close: the manager is dropped once it has no more users.
+                tokenManager = TokenManager.get(wml_credentials, config);
+                tokenManager.acquire();
+                tokenAcquired = true;
+                return;
+            }
+            manager = tokenManager;
+        }
+        manager.getToken();
     }
 
-    private void lookupToken() throws IloException {
-        if (wml_credentials.isCPD) lookupIcpToken();
-        else lookupBearerToken();
+    /* Called by the token manager. */
+    String lookupToken() throws IloException {
+        synchronized (tokenLock) {
+            if (httpClient == null)
+                httpClient = HttpClientRegistry.getClient(config);
+        }
+        if (wml_credentials.isCPD) return lookupIcpToken();
+        else return lookupBearerToken();
     }
 
 
-    private void lookupIcpToken() throws IloException {
+    private String lookupIcpToken() throws IloException {
         logger.info("Lookup Bearer Token from ICP (ASYNCH)");
         HashMap<String, String> headers = new HashMap<>();
         headers.put(ACCEPT, APPLICATION_JSON);
@@ -205,11 +209,12 @@ public class HttpUtils implements TokenHandler {
                 params,
                 headers);
 
-        extractToken(res);
+        return extractToken(res);
     }
 
-    private void extractToken(String reqAnswer) throws IloException {
+    private String extractToken(String reqAnswer) throws IloException {
             JSONObject json = parseJson(reqAnswer);
+            String bearerToken;
             if (json.containsKey(ACCESS_TOKEN))
                 bearerToken = (String) json.get(ACCESS_TOKEN);
             else if (json.containsKey(ACCESSTOKEN))
@@ -217,10 +222,11 @@ public class HttpUtils implements TokenHandler {
             else
                 throw new IloException("Missing token in authentication call");
             logger.info("Bearer Token OK");
-            //logger.info("Bearer Token OK : " + this.bearerToken);
+            //logger.info("Bearer Token OK : " + bearerToken);
+            return bearerToken;
     }
 
-    private void lookupBearerToken() throws IloException {
+    private String lookupBearerToken() throws IloException {
         // Cloud
         logger.info("Lookup Bearer Token from IAM (ASYNCH)");
         HashMap<String, String> headers = new HashMap<>();
@@ -237,25 +243,7 @@ public class HttpUtils implements TokenHandler {
                 params,
                 headers);
 
-        extractToken(res);
-    }
-
-    private static class MyX509TrustManager implements X509TrustManager {
-        public MyX509TrustManager() {
-        }
-
-        @Override
-        public void checkClientTrusted(X509Certificate[] var1, String var2) throws CertificateException {
-        }
-
-        @Override
-        public void checkServerTrusted(X509Certificate[] var1, String var2) throws CertificateException {
-        }
-
-        @Override
-        public X509Certificate[] getAcceptedIssuers() {
-            return null;
-        }
+        return extractToken(res);
     }
 
     private String buildTargetUrl(String host, String url, Map<String, String> params) {
@@ -274,61 +262,41 @@ public class HttpUtils implements TokenHandler {
         return targetUrl.toString();
     }
 
-    private HttpRequestBase getRequest(String targetUrl, String method, byte[] body) throws IloException {
+    private HttpRequestBase getRequest(String targetUrl, String method, HttpEntity body) throws IloException {
         switch (method) {
             case GET:
                 return new HttpGet(targetUrl);
             case PUT:
                 HttpPut put = new HttpPut(targetUrl);
                 if (body != null) {
-                    put.setEntity(
-                            new ByteArrayEntity(body)
-                    );
+                    put.setEntity(body);
                 }
                 return put;
             case POST:
                 HttpPost post = new HttpPost(targetUrl);
                 if (body != null) {
-                    post.setEntity(
-                            new ByteArrayEntity(body)
-                    );
+                    post.setEntity(body);
                 }
                 return post;
             case DELETE:
                 return new HttpDelete(targetUrl);
+            case HEAD:
+                return new HttpHead(targetUrl);
         }
         throw new IloException("Unkown method type: "+method + " for "+targetUrl);
     }
 
 
-    private CloseableHttpClient createHttpsClient() throws IloException {
-        try {
-            SSLContext sslContext = SSLContext.getInstance(sslContextName);
-
-
-            TrustManager[] managers = new TrustManager[]{new MyX509TrustManager()};
-            sslContext.init(null, managers, new SecureRandom());
-            return HttpClientBuilder.create().setHostnameVerifier(new AllowAllHostnameVerifier())
-                    .setSslcontext(sslContext)
-                    .build();
-        } catch (KeyManagementException e) {
-            throw new IloException(e.getMessage());
-        } catch (NoSuchAlgorithmException e) {
-            throw new IloException(e.getMessage());
-        }
-    }
-
     public void close() {
-        if (timer != null) {
-            timer.cancel();
-            timer.purge();
-        }
-        try {
-            if (httpClient != null) httpClient.close();
-        } catch (IOException e) {
-            logger.warn("Ignoring issue when closing the http client: " + e.getMessage());
+        synchronized (tokenLock) {
+            // The token stays readable, but is no longer refreshed for this connector.
+            if (tokenAcquired) {
+                tokenManager.release();
+                tokenAcquired = false;
+            }
+            // The client is shared with the other connectors: only release it.
+            httpClient = null;
         }
-        httpClient = null;
     }
 
     @Override
@@ -338,48 +306,81 @@ public class HttpUtils implements TokenHandler {
 
 
     protected String doCall(String host, String url, Map<String, String> params, Map<String, String> headers, byte[] body, String method) throws IloException {
-        String targetUrl = buildTargetUrl(host, url, params);
-        Map<String, String> curlParams = new HashMap<>();
-        for (String k : params.keySet()) {
-            if (k.equals(APIKEY))
-                curlParams.put(k, "#####");
-            else
-                curlParams.put(k, params.get(k));
-        }
+        return doCall(host, url, params, headers, body, body == null ? null : new ByteArrayEntity(body), method);
+    }
 
-        String curlUrl = buildTargetUrl(host, url, curlParams);
-        HttpRequestBase getReq = getRequest(targetUrl, method, body);
+    protected String doCall(String host, String url, Map<String, String> params, Map<String, String> headers, HttpEntity entity, String method) throws IloException {
+        return doCall(host, url, params, headers, null, entity, method);
+    }
 
-        StringBuilder curl = new StringBuilder();
-        curl.append("curl --request ").append(method).append(" \"").append(curlUrl).append("\"");
+    /* body is only used for the curl log, the entity is what is sent. */
+    private String doCall(String host, String url, Map<String, String> params, Map<String, String> headers, byte[] body, HttpEntity entity, String method) throws IloException {
+        String targetUrl = buildTargetUrl(host, url, params);
+        HttpRequestBase getReq = getRequest(targetUrl, method, compress(url, entity, method));
 
-        Iterator<String> it = headers.keySet().iterator();
-        while (it.hasNext()) {
-            String key = it.next();
-            String value = headers.get(key);
-            getReq.addHeader(key, value);
-            if (!key.equals(AUTHORIZATION))
-                curl.append(" --header \"").append(key).append(": ").append(value).append("\"");
-            else {
-                curl.append(" --header \"").append(key).append(": ").append(key).append(" ####\"");
-                if (value == null)
-                    logger.warn("Calling " + url + " with empty token!");
-            }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            getReq.addHeader(header.getKey(), header.getValue());
+            if (header.getKey().equals(AUTHORIZATION) && header.getValue() == null)
+                logger.warn("Calling " + url + " with empty token!");
         }
-        if (body != null && method.equals(PUT) == false)
-            curl.append(new String(body));
-        logger.info("Curl info: " + curl);
+
+        if (requestLogger.isEnabled())
+            logCurl(host, url, params, headers, body, entity, method);
 
         try {
             return executeQuery(getReq);
         }
+        catch (HttpStatusException e){
+            throw e;
+        }
         catch (IloException | IOException e){
             throw new IloException(e.getMessage());
         }
     }
 
+    /*
+    The job submissions are gzipped while being sent when they are big: the inline models are repetitive text.
+     */
+    private HttpEntity compress(String url, HttpEntity entity, String method) {
+        if (entity == null || compressRequestMinSize <= 0 || !method.equals(POST) || !url.startsWith(MLV4_DEPLOYMENT_JOBS))
+            return entity;
+        long length = entity.getContentLength();
+        if (length < compressRequestMinSize)
+            return entity;
+        logger.info("Compressing the " + length + " bytes request to " + url);
+        return new GzipCompressingEntity(entity);
+    }
+
+    private void logCurl(String host, String url, Map<String, String> params, Map<String, String> headers, byte[] body, HttpEntity entity, String method) {
+        Map<String, String> curlParams = new LinkedHashMap<>();
+        for (Map.Entry<String, String> param : params.entrySet())
+            curlParams.put(param.getKey(), RequestLogger.getParamValue(param.getKey(), param.getValue()));
+
+        String curlUrl = buildTargetUrl(host, url, curlParams);
+
+        StringBuilder curl = new StringBuilder();
+        curl.append("curl --request ").append(method).append(" \"").append(curlUrl).append("\"");
+
+        for (Map.Entry<String, String> header : headers.entrySet())
+            RequestLogger.appendHeader(curl, header.getKey(), header.getValue());
+        if (!method.equals(PUT)) {
+            if (body != null)
+                requestLogger.appendBody(curl, body);
+            else if (entity != null)
+                requestLogger.appendStreamedBody(curl, entity.getContentLength());
+        }
+        long logged = requestLogger.log(curl);
+        logger.debug("Logged " + logged + " bytes for " + method + " " + url);
+    }
+
     private String executeQuery(HttpRequestBase getReq) throws IloException, IOException{
-        HttpResponse response = httpClient.execute(getReq);
+        // Closing the response gives the connection back to the pool.
+        try (CloseableHttpResponse response = httpClient.execute(getReq)) {
+            return readResponse(getReq, response);
+        }
+    }
+
+    private String readResponse(HttpRequestBase getReq, HttpResponse response) throws IloException, IOException{
         int statusCode = response.getStatusLine().getStatusCode();
         HttpEntity entity = response.getEntity();
         if (statusCode >= 400) {
@@ -391,7 +392,7 @@ public class HttpUtils implements TokenHandler {
                 logger.error(msg);
             } else
                 msg = "Error(" + statusCode + ") calling " + getReq.getURI();
-            throw new IloException(msg);
+            throw new HttpStatusException(statusCode, msg);
         } else {
             logger.info("status " + statusCode);
             if (entity != null) {
@@ -416,13 +417,21 @@ public class HttpUtils implements TokenHandler {
             return doCall(host, targetUrl, params, headers, body, POST);
     }
 
+    public String doPost(String host, String targetUrl, Map<String, String> params, Map<String, String> headers, HttpEntity body) throws IloException {
+            return doCall(host, targetUrl, params, headers, body, POST);
+    }
+
     public String doGet(String host, String targetUrl, Map<String, String> params, Map<String, String> headers) throws IloException {
-            String ret =  doCall(host, targetUrl, params, headers, null, GET);
+            String ret =  doCall(host, targetUrl, params, headers, (byte[]) null, GET);
             return ret;
     }
 
     public String doDelete(String host, String targetUrl, Map<String, String> params, Map<String, String> headers) throws IloException {
-            return doCall(host, targetUrl, params, headers, null, DELETE);
+            return doCall(host, targetUrl, params, headers, (byte[]) null, DELETE);
+    }
+
+    public String doHead(String host, String targetUrl, Map<String, String> params, Map<String, String> headers) throws IloException {
+            return doCall(host, targetUrl, params, headers, (byte[]) null, HEAD);
     }
 
     public String doPut(String host, String targetUrl, Map<String, String> params, Map<String, String> headers, byte[] body) throws IloException {
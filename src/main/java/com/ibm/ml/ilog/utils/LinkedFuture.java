@@ -0,0 +1,44 @@
+package com.ibm.ml.ilog.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+/*
+A future completed as another one, whose cancellation is passed on to its source.
+The futures derived from the one of a WML job (thenApply, handleAsync...) are not cancelled with it, and cancelling
+them does not cancel the job: cancelling this future cancels the future of the job, which deletes the job. The
+completion of the other future still runs, for example to release the connector.
+ */
+public class LinkedFuture<T> extends CompletableFuture<T> {
+    private final Future<?> source;
+
+    private LinkedFuture(Future<?> source) {
+        this.source = source;
+    }
+
+    /*
+    A future completed as then, cancelling it cancels source.
+     */
+    public static <T> LinkedFuture<T> of(Future<?> source, CompletableFuture<T> then) {
+        final LinkedFuture<T> ret = new LinkedFuture<>(source);
+        then.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T value, Throwable error) {
+                if (error == null)
+                    ret.complete(value);
+                else
+                    ret.completeExceptionally(error);
+            }
+        });
+        return ret;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        // First, as the cancelled source fails the other future, which would complete this one.
+        boolean ret = super.cancel(mayInterruptIfRunning);
+        source.cancel(mayInterruptIfRunning);
+        return ret;
+    }
+}
@@ -0,0 +1,137 @@
+package com.ibm.ml.ilog.utils;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.zip.GZIPOutputStream;
+
+/*
+An http entity for a WML job payload which embeds a (big) model file.
+The json before and after the model are kept in memory, the model file is base64 encoded
+on the fly from the disk to the socket so that the memory footprint does not depend on the model size.
+A model exported in memory is encoded the same way from its buffer, and can be gzipped on the way: the length of
+the payload is then unknown and it is sent chunked.
+ */
+public class PayloadEntity extends AbstractHttpEntity {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final byte[] prefix;
+    private final Path file;
+    private final byte[] content;
+    private final int length;
+    private final boolean gzip;
+    private final byte[] suffix;
+
+    public PayloadEntity(byte[] prefix, Path file, byte[] suffix) {
+        this(prefix, file, null, 0, false, suffix);
+    }
+
+    /*
+    The model is the first length bytes of content, gzipped while being encoded if gzip is set.
+     */
+    public PayloadEntity(byte[] prefix, byte[] content, int length, boolean gzip, byte[] suffix) {
+        this(prefix, null, content, length, gzip, suffix);
+    }
+
+    private PayloadEntity(byte[] prefix, Path file, byte[] content, int length, boolean gzip, byte[] suffix) {
+        this.prefix = prefix;
+        this.file = file;
+        this.content = content;
+        this.length = length;
+        this.gzip = gzip;
+        this.suffix = suffix;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+        setChunked(gzip);
+    }
+
+    /*
+    Size of the base64 encoding of the model file, -1 when it is gzipped on the fly.
+     */
+    public long getEncodedLength() {
+        if (gzip)
+            return -1;
+        if (file == null)
+            return 4 * ((length + 2L) / 3);
+        try {
+            long size = Files.size(file);
+            return 4 * ((size + 2) / 3);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        if (gzip)
+            return -1;
+        return prefix.length + getEncodedLength() + suffix.length;
+    }
+
+    /*
+    Only there to fulfill the HttpEntity contract: the http client uses writeTo.
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(prefix);
+        if (file == null) {
+            try (OutputStream encoder = wrap(Base64.getEncoder().wrap(new NonClosingOutputStream(out)))) {
+                for (int offset = 0; offset < length; offset += BUFFER_SIZE)
+                    encoder.write(content, offset, Math.min(BUFFER_SIZE, length - offset));
+            }
+            out.write(suffix);
+            out.flush();
+            return;
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+             OutputStream encoder = Base64.getEncoder().wrap(new NonClosingOutputStream(out))) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                encoder.write(buffer, 0, read);
+        }
+        out.write(suffix);
+        out.flush();
+    }
+
+    private OutputStream wrap(OutputStream encoder) throws IOException {
+        return gzip ? new GZIPOutputStream(encoder, BUFFER_SIZE) : encoder;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /* Closing the base64 encoder writes the padding but must not close the socket. */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
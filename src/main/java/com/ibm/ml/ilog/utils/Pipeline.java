@@ -0,0 +1,131 @@
+package com.ibm.ml.ilog.utils;
+
+import ilog.concert.IloException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+The stages of the preparation of a job, with their timings.
+The independent stages, like the network calls, run on the pipeline threads with async while the calling thread runs
+the others, like the model export which must stay on the thread of the model. join waits for an async stage before
+the stages which need its result.
+Each stage is timed, the breakdown is logged once the job is submitted.
+ */
+public final class Pipeline {
+    private static final Logger logger = LogManager.getLogger();
+
+    private static ExecutorService executor = null;
+
+    /* A stage running on a pipeline thread. */
+    public interface Stage<T> {
+        T run() throws IloException;
+    }
+
+    private final String name;
+    private final long start = now();
+    private final List<String> stages = new ArrayList<>();
+    private final List<Long> times = new ArrayList<>();
+
+    public Pipeline(String name) {
+        this.name = name;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null)
+            executor = Executors.newCachedThreadPool(new DaemonThreadFactory("wml-pipeline"));
+        return executor;
+    }
+
+    /*
+    Starts a stage on a pipeline thread.
+     */
+    public <T> Future<T> async(final String stage, final Stage<T> task) {
+        return getExecutor().submit(new Callable<T>() {
+            @Override
+            public T call() throws IloException {
+                long t1 = now();
+                try {
+                    return task.run();
+                } finally {
+                    record(stage, t1);
+                }
+            }
+        });
+    }
+
+    /*
+    Waits for an async stage and returns its result. The time the calling thread was blocked is recorded as a stage too.
+     */
+    public <T> T join(String stage, Future<T> future) throws IloException {
+        long t1 = now();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IloException("Interrupted while waiting for " + stage);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IloException)
+                throw (IloException) cause;
+            throw new IloException(stage + " failed: " + cause.getMessage());
+        } finally {
+            record("wait " + stage, t1);
+        }
+    }
+
+    /*
+    Waits for an async stage whose result is not needed, when the job is given up, so that it does not outlive the connector.
+     */
+    public void settle(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Reported by join, or not needed.
+        }
+    }
+
+    /*
+    Records a stage of the calling thread started at t1, returns the current time, the start of the next stage.
+     */
+    public long record(String stage, long t1) {
+        long t2 = now();
+        synchronized (this) {
+            stages.add(stage);
+            times.add(t2 - t1);
+        }
+        return t2;
+    }
+
+    /* Msec since the start of the pipeline. */
+    public long getElapsedTime() {
+        return now() - start;
+    }
+
+    public void log() {
+        logger.info(this);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder ret = new StringBuilder(name).append(" stages:");
+        for (int i = 0; i < stages.size(); i++)
+            ret.append(' ').append(stages.get(i)).append('=').append(times.get(i)).append("ms");
+        return ret.append(", total=").append(getElapsedTime()).append("ms").toString();
+    }
+
+    private static long now() {
+        return new Date().getTime();
+    }
+}
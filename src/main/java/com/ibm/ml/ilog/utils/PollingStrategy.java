@@ -0,0 +1,57 @@
+package com.ibm.ml.ilog.utils;
+
+import com.typesafe.config.Config;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+Delays between two job status checks.
+The first checks are fast, then the delay grows exponentially up to a ceiling.
+A random jitter avoids having many jobs polling at the same moment.
+ */
+public class PollingStrategy {
+    private final long initialDelay;
+    private final long maxDelay;
+    private final double factor;
+    private final double jitter;
+
+    public PollingStrategy(Config config) {
+        this(config.getLong("wmlconnector.v4.status_rate"),
+                config.getLong("wmlconnector.v4.status_rate_max"),
+                config.getDouble("wmlconnector.v4.status_rate_factor"),
+                config.getDouble("wmlconnector.v4.status_jitter"));
+    }
+
+    public PollingStrategy(long initialDelay, long maxDelay, double factor, double jitter) {
+        if (initialDelay <= 0 || maxDelay < initialDelay || factor < 1.0 || jitter < 0.0 || jitter >= 1.0)
+            throw new IllegalArgumentException("Bad polling strategy: " + initialDelay + ", " + maxDelay + ", " + factor + ", " + jitter);
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.factor = factor;
+        this.jitter = jitter;
+    }
+
+    /*
+    Delay in msec before the given check, counted from 0: the initial delay for the first check,
+    then multiplied by the factor at each check up to the max delay, with the jitter applied.
+     */
+    public long getDelay(int attempt) {
+        double delay = initialDelay * Math.pow(factor, attempt);
+        if (jitter > 0.0)
+            delay = delay * (1.0 + jitter * (2.0 * ThreadLocalRandom.current().nextDouble() - 1.0));
+        return Math.max(1L, Math.min(maxDelay, (long) delay));
+    }
+
+    public long getInitialDelay() {
+        return initialDelay;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    @Override
+    public String toString() {
+        return initialDelay + " msec up to " + maxDelay + " msec (x" + factor + ", jitter " + jitter + ")";
+    }
+}
@@ -0,0 +1,116 @@
+package com.ibm.ml.ilog.utils;
+
+import com.typesafe.config.Config;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Logs the http requests as curl commands.
+OFF does not log anything, HEADERS logs the url and the headers, BODY also logs the first bytes of the request bodies.
+Nothing is built when the level is OFF or when INFO is disabled for this logger.
+The secrets are never logged: the api keys in the parameters and the Authorization headers are hidden.
+ */
+public class RequestLogger {
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final String AUTHORIZATION = "Authorization";
+    private static final String APIKEY = "apikey";
+    private static final String HIDDEN = "#####";
+
+    public enum Level {
+        OFF,
+        HEADERS,
+        BODY
+    }
+
+    private final Level level;
+    private final int maxBodySize;
+
+    private final AtomicLong loggedBytes = new AtomicLong();
+    private final AtomicLong loggedCalls = new AtomicLong();
+
+    public RequestLogger(Config config) {
+        this(config.getEnum(Level.class, "wmlconnector.v4.request_log"), config.getInt("wmlconnector.v4.request_log_max_body"));
+    }
+
+    public RequestLogger(Level level, int maxBodySize) {
+        this.level = level;
+        this.maxBodySize = maxBodySize;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public boolean isEnabled() {
+        return level != Level.OFF && logger.isInfoEnabled();
+    }
+
+    public boolean logsBody() {
+        return level == Level.BODY;
+    }
+
+    /*
+    The value of a query parameter as logged, the api key is hidden.
+     */
+    public static String getParamValue(String name, String value) {
+        return APIKEY.equals(name) ? HIDDEN : value;
+    }
+
+    /*
+    Appends a header, the value of Authorization (bearer token, or user and password) is hidden.
+     */
+    public static void appendHeader(StringBuilder curl, String name, String value) {
+        curl.append(" --header \"").append(name).append(": ");
+        if (AUTHORIZATION.equalsIgnoreCase(name))
+            curl.append(name).append(" ####");
+        else
+            curl.append(value);
+        curl.append("\"");
+    }
+
+    /*
+    Appends at most the configured number of bytes of the body.
+     */
+    public void appendBody(StringBuilder curl, byte[] body) {
+        if (!logsBody() || body == null)
+            return;
+        int size = Math.min(body.length, maxBodySize);
+        curl.append(" --data '").append(new String(body, 0, size, StandardCharsets.UTF_8)).append("'");
+        if (size < body.length)
+            curl.append(" (truncated ").append(body.length - size).append(" of ").append(body.length).append(" bytes)");
+    }
+
+    /*
+    Appends a placeholder for a body which is streamed and cannot be logged.
+     */
+    public void appendStreamedBody(StringBuilder curl, long size) {
+        if (!logsBody())
+            return;
+        curl.append(" --data <streamed body of ").append(size).append(" bytes>");
+    }
+
+    /*
+    Logs the curl command and returns the number of bytes logged for this call.
+     */
+    public long log(StringBuilder curl) {
+        String msg = "Curl info: " + curl;
+        logger.info(msg);
+        loggedBytes.addAndGet(msg.length());
+        loggedCalls.incrementAndGet();
+        return msg.length();
+    }
+
+    /* Total number of bytes logged so far. */
+    public long getLoggedBytes() {
+        return loggedBytes.get();
+    }
+
+    /* Total number of calls logged so far. */
+    public long getLoggedCalls() {
+        return loggedCalls.get();
+    }
+}
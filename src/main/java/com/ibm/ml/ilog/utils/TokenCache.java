@@ -0,0 +1,140 @@
+package com.ibm.ml.ilog.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/*
+A token saved on disk, so that the next processes using the same credentials skip the token lookup while it is valid.
+The file is encrypted with AES-GCM, with a key derived from the credentials by PBKDF2 with a random salt stored in the
+file: it can only be read by who has them, and a copy of the file cannot be checked against a guessed password cheaply.
+The file holds the salt, the IV, then the encrypted expiry time and token.
+ */
+final class TokenCache {
+    private static final Logger logger = LogManager.getLogger();
+    private static final int SALT_LENGTH = 16;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+    private static final int KEY_LENGTH = 128;
+    private static final int ITERATIONS = 65536;
+
+    private final File file;
+    private final char[] secret;
+    private final SecureRandom random = new SecureRandom();
+    // The last derived key and its salt, so that a process derives the key once.
+    private byte[] salt = null;
+    private SecretKeySpec key = null;
+
+    /* The file name is derived from a digest of the credentials, the key from the credentials themselves. */
+    TokenCache(File directory, byte[] nameDigest, String secret) {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 16; i++)
+            name.append(String.format("%02x", nameDigest[i]));
+        file = new File(directory, name + ".token");
+        this.secret = secret.toCharArray();
+    }
+
+    private synchronized SecretKeySpec getKey(byte[] salt) throws GeneralSecurityException {
+        if (key == null || !Arrays.equals(salt, this.salt)) {
+            PBEKeySpec spec = new PBEKeySpec(secret, salt, ITERATIONS, KEY_LENGTH);
+            try {
+                byte[] derived = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+                key = new SecretKeySpec(derived, "AES");
+                this.salt = salt.clone();
+            } finally {
+                spec.clearPassword();
+            }
+        }
+        return key;
+    }
+
+    /* The salt of the key, the one of the file read last if any, so that saving does not derive a new key. */
+    private synchronized byte[] getSalt() {
+        if (salt == null) {
+            byte[] ret = new byte[SALT_LENGTH];
+            random.nextBytes(ret);
+            return ret;
+        }
+        return salt.clone();
+    }
+
+    /*
+    The cached token, with a refresh time of 0, null if there is none or it cannot be read.
+     */
+    TokenManager.Token load() {
+        if (!file.isFile())
+            return null;
+        try {
+            byte[] content = Files.readAllBytes(file.toPath());
+            int header = SALT_LENGTH + IV_LENGTH;
+            if (content.length <= header)
+                return null;
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, getKey(Arrays.copyOf(content, SALT_LENGTH)), new GCMParameterSpec(TAG_LENGTH, content, SALT_LENGTH, IV_LENGTH));
+            ByteBuffer plain = ByteBuffer.wrap(cipher.doFinal(content, header, content.length - header));
+            long expiresAt = plain.getLong();
+            String value = new String(plain.array(), plain.position(), plain.remaining(), StandardCharsets.UTF_8);
+            return new TokenManager.Token(value, 0, expiresAt);
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            logger.warn("Ignoring the token cache " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    void save(TokenManager.Token token) {
+        try {
+            byte[] value = token.value.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer plain = ByteBuffer.allocate(8 + value.length);
+            plain.putLong(token.expiresAt).put(value);
+
+            byte[] salt = getSalt();
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, getKey(salt), new GCMParameterSpec(TAG_LENGTH, iv));
+            byte[] encrypted = cipher.doFinal(plain.array());
+
+            File directory = file.getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs())
+                throw new IOException("Cannot create " + directory);
+            File tmp = File.createTempFile("token", ".tmp", directory);
+            try {
+                restrict(tmp);
+                byte[] content = new byte[SALT_LENGTH + IV_LENGTH + encrypted.length];
+                System.arraycopy(salt, 0, content, 0, SALT_LENGTH);
+                System.arraycopy(iv, 0, content, SALT_LENGTH, IV_LENGTH);
+                System.arraycopy(encrypted, 0, content, SALT_LENGTH + IV_LENGTH, encrypted.length);
+                Files.write(tmp.toPath(), content);
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                tmp.delete();
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            logger.warn("Cannot save the token cache " + file + ": " + e.getMessage());
+        }
+    }
+
+    /* Only the owner can read the file, where the file system allows it. */
+    private static void restrict(File f) throws IOException {
+        try {
+            Files.setPosixFilePermissions(f.toPath(), PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            // Not a posix file system.
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.ibm.ml.ilog.utils;
+
+import com.ibm.ml.ilog.Credentials;
+import com.typesafe.config.Config;
+import ilog.concert.IloException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+Process wide bearer tokens, one per set of credentials.
+All the connectors using the same credentials share the token: it is looked up once, then refreshed in the background
+before it expires while a connector uses it. Concurrent lookups are coalesced into one call, and a failed refresh is
+retried with a backoff while the current token is still served.
+The token is published in a volatile field: reading it never locks.
+A manager is dropped once its last user is released, a later connector with the same credentials gets a new one.
+With token_cache.enabled, the token is also saved in an encrypted file, reused by the next processes while it is valid.
+ */
+public final class TokenManager {
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final Map<String, TokenManager> managers = new HashMap<>();
+    private static ScheduledExecutorService scheduler = null;
+
+    // A token is refreshed synchronously when it expires in less than this.
+    private static final long EXPIRY_SKEW = 30 * 1000;
+    private static final long MIN_RETRY_DELAY = 1000;
+    private static final long MAX_RETRY_DELAY = 60 * 1000;
+
+    /* A token, the time it must be refreshed and the time it expires, in msec since the epoch. */
+    static final class Token {
+        final String value;
+        final long refreshAt;
+        final long expiresAt;
+
+        Token(String value, long refreshAt, long expiresAt) {
+            this.value = value;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final String key;
+    private final String name;
+    private final HttpUtils source;
+    private final long refreshRate;
+    private final TokenCache cache;
+    private volatile Token token = null;
+    private int users = 0;
+    private int failures = 0;
+    private ScheduledFuture<?> next = null;
+    // Changed when the refreshes stop, so that a refresh in progress does not reschedule itself.
+    private int generation = 0;
+
+    private TokenManager(String key, String name, HttpUtils source, long refreshRate, TokenCache cache) {
+        this.key = key;
+        this.name = name;
+        this.source = source;
+        this.refreshRate = refreshRate;
+        this.cache = cache;
+    }
+
+    /*
+    Returns the manager of the credentials, creating it if needed.
+     */
+    public static TokenManager get(Credentials credentials, Config config) throws IloException {
+        String id = getId(credentials);
+        // A digest of the credentials, so that the secrets are not used as keys.
+        String key = Base64.getEncoder().encodeToString(digest("manager", id));
+        synchronized (managers) {
+            return get(key, id, credentials, config);
+        }
+    }
+
+    private static TokenManager get(String key, String id, Credentials credentials, Config config) throws IloException {
+        TokenManager manager = managers.get(key);
+        if (manager == null) {
+            String name = credentials.isCPD ? credentials.get(Credentials.WML_HOST) : credentials.get(Credentials.IAM_HOST);
+            TokenCache cache = null;
+            if (config.getBoolean("wmlconnector.v4.token_cache.enabled")) {
+                String path = config.getString("wmlconnector.v4.token_cache.path");
+                File directory = path.isEmpty() ? new File(System.getProperty("user.home"), ".wml-tokens") : new File(path);
+                cache = new TokenCache(directory, digest("file", id), id);
+            }
+            manager = new TokenManager(key, name, new HttpUtils(credentials), config.getInt("wmlconnector.v4.refresh_rate") * 60 * 1000L, cache);
+            managers.put(key, manager);
+        }
+        return manager;
+    }
+
+    /* What identifies the user. */
+    private static String getId(Credentials credentials) {
+        return credentials.isCPD ?
+                "cpd\n" + credentials.get(Credentials.WML_HOST) + "\n" + credentials.get(Credentials.CPD_URL) + "\n"
+                        + credentials.get(Credentials.CPD_USERNAME) + "\n" + credentials.get(Credentials.CPD_PASSWORD) :
+                "iam\n" + credentials.get(Credentials.IAM_HOST) + "\n" + credentials.get(Credentials.IAM_URL) + "\n"
+                        + credentials.get(Credentials.WML_API_KEY);
+    }
+
+    private static byte[] digest(String purpose, String id) throws IloException {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest((purpose + "\n" + id).getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IloException(e.getMessage());
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null)
+            scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("wml-token-refresh"));
+        return scheduler;
+    }
+
+    /*
+    Registers a user of the token: the token is looked up if needed and refreshed until the last user is released.
+     */
+    public void acquire() throws IloException {
+        try {
+            getToken();
+        } catch (IloException e) {
+            // Not kept for credentials which do not work.
+            synchronized (managers) {
+                synchronized (this) {
+                    if (users == 0 && managers.get(key) == this)
+                        managers.remove(key);
+                }
+            }
+            throw e;
+        }
+        synchronized (managers) {
+            synchronized (this) {
+                users++;
+                if (next == null)
+                    schedule(token.refreshAt - now());
+                // Back in the map if it was dropped meanwhile, unless another manager replaced it.
+                if (!managers.containsKey(key))
+                    managers.put(key, this);
+            }
+        }
+    }
+
+    /*
+    Unregisters a user of the token. The manager of the last user stops the refreshes and is dropped from the map:
+    the token stays readable by its connectors.
+     */
+    public void release() {
+        synchronized (managers) {
+            synchronized (this) {
+                if (users == 0)
+                    return;
+                users--;
+                if (users > 0)
+                    return;
+                if (next != null) {
+                    next.cancel(false);
+                    next = null;
+                    generation++;
+                }
+                if (managers.get(key) == this)
+                    managers.remove(key);
+            }
+        }
+    }
+
+    /*
+    The current token, without waiting: null if there is none yet.
+     */
+    public String peek() {
+        Token t = token;
+        return t == null ? null : t.value;
+    }
+
+    /*
+    A valid token: it is looked up first if it is missing or about to expire.
+     */
+    public String getToken() throws IloException {
+        Token t = token;
+        if (t != null && now() < t.expiresAt - EXPIRY_SKEW)
+            return t.value;
+        return refresh(false).value;
+    }
+
+    /*
+    Looks a new token up, unless another thread did it meanwhile.
+     */
+    private synchronized Token refresh(boolean scheduled) throws IloException {
+        Token t = token;
+        long now = now();
+        if (t != null && now < t.refreshAt && (scheduled || now < t.expiresAt - EXPIRY_SKEW))
+            return t;
+        if (t == null && cache != null) {
+            Token cached = cache.load();
+            if (cached != null && now < cached.expiresAt - EXPIRY_SKEW) {
+                t = newToken(cached.value, cached.expiresAt, now);
+                token = t;
+                logger.info("Cached bearer token for " + name + " valid for " + (t.expiresAt - now) / 1000 + " seconds");
+                return t;
+            }
+        }
+        String value = source.lookupToken();
+        now = now();
+        t = newToken(value, getExpiry(value, now), now);
+        token = t;
+        failures = 0;
+        logger.info("Bearer token for " + name + " valid for " + (t.expiresAt - now) / 1000 + " seconds");
+        if (cache != null)
+            cache.save(t);
+        return t;
+    }
+
+    private Token newToken(String value, long expiresAt, long now) {
+        long refreshAt = now + Math.min(refreshRate, Math.max((expiresAt - now) * 4 / 5, MIN_RETRY_DELAY));
+        return new Token(value, refreshAt, expiresAt);
+    }
+
+    /*
+    The expiry of a JWT token, or the refresh rate if it cannot be read.
+    The expires_in of the IAM answer is deliberately ignored in favour of the JWT exp: exp is an absolute time, whereas
+    expires_in counts from when the answer was sent, and is missing from the CPD answers.
+     */
+    private long getExpiry(String value, long now) {
+        String[] parts = value.split("\\.");
+        if (parts.length >= 2) {
+            try {
+                String payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+                Object exp = HttpUtils.parseJson(payload).get("exp");
+                if (exp instanceof Number)
+                    return ((Number) exp).longValue() * 1000;
+            } catch (IllegalArgumentException e) {
+                // Not a JWT.
+            }
+        }
+        return now + refreshRate;
+    }
+
+    private void schedule(long delay) {
+        next = getScheduler().schedule(new Refresh(generation), Math.max(delay, 0), TimeUnit.MILLISECONDS);
+    }
+
+    /* Background refresh, rescheduled after each run while the token has users. */
+    private class Refresh implements Runnable {
+        private final int generation;
+
+        Refresh(int generation) {
+            this.generation = generation;
+        }
+
+        @Override
+        public void run() {
+            long delay;
+            try {
+                delay = refresh(true).refreshAt - now();
+            } catch (Exception e) {
+                synchronized (TokenManager.this) {
+                    failures++;
+                    delay = Math.min(MIN_RETRY_DELAY << Math.min(failures - 1, 16), MAX_RETRY_DELAY);
+                }
+                logger.warn("Token refresh for " + name + " failed " + failures + " time(s), retrying in "
+                        + delay / 1000 + " seconds: " + e.getMessage());
+            }
+            synchronized (TokenManager.this) {
+                if (generation == TokenManager.this.generation && users > 0)
+                    schedule(delay);
+            }
+        }
+    }
+
+    private static long now() {
+        return new Date().getTime();
+    }
+}
@@ -2,8 +2,10 @@ package com.ibm.ml.ilog.v4;
 
 import com.ibm.json.java.JSONObject;
 import com.ibm.ml.ilog.Credentials;
+import com.ibm.ml.ilog.utils.HttpStatusException;
 import com.ibm.ml.ilog.utils.HttpUtils;
 import ilog.concert.IloException;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -112,7 +114,13 @@ public class COSConnector extends HttpUtils implements com.ibm.ml.ilog.COSConnec
     @Override
     public String putFile(String fileName, String filePath) throws IloException {
         byte[] bytes = getFileContent(filePath);
+        return putBytes(fileName, bytes, bytes.length);
+    }
 
+    /*
+    Uploads the first length bytes of content, for example of an export buffer, without copying them.
+     */
+    public String putBytes(String fileName, byte[] content, int length) throws IloException {
         Map<String, String> params = getPlatformParams();
         params.put("content_format", "native");
 
@@ -120,10 +128,10 @@ public class COSConnector extends HttpUtils implements com.ibm.ml.ilog.COSConnec
         headers.put("Content-Type", "text/plain");
 
         long t1 = new Date().getTime();
-        String ret = doPut(
+        String ret = doCall(
                 wml_credentials.get(Credentials.COS_ENDPOINT),
                 getTargetUrl(fileName),
-                params, headers, bytes);
+                params, headers, new ByteArrayEntity(content, 0, length), PUT);
         long t2 = new Date().getTime();
         logger.info("Uploading in COS took " + (t2 - t1) / 1000 + " seconds.");
         return ret;
@@ -204,4 +212,22 @@ public class COSConnector extends HttpUtils implements com.ibm.ml.ilog.COSConnec
 
         return res;
     }
+
+    /*
+    Whether the file is in the bucket.
+     */
+    public boolean exists(String fileName) throws IloException {
+        try {
+            doHead(
+                    wml_credentials.get(Credentials.COS_ENDPOINT),
+                    getTargetUrl(fileName),
+                    getPlatformParams(),
+                    getPlatformHeaders());
+            return true;
+        } catch (HttpStatusException e) {
+            if (e.isNotFound())
+                return false;
+            throw e;
+        }
+    }
 }
\ No newline at end of file
@@ -1,24 +1,64 @@
 package com.ibm.ml.ilog.v4;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import com.ibm.json.java.JSONArray;
 import com.ibm.json.java.JSONObject;
+import com.ibm.ml.ilog.utils.AsciiInputStream;
+import com.ibm.ml.ilog.utils.DaemonThreadFactory;
+import com.ibm.ml.ilog.utils.ExportSink;
+import com.ibm.ml.ilog.utils.HttpStatusException;
 import com.ibm.ml.ilog.utils.HttpUtils;
+import com.ibm.ml.ilog.utils.PayloadEntity;
+import com.ibm.ml.ilog.utils.PollingStrategy;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import com.ibm.ml.ilog.Credentials;
 import com.ibm.ml.ilog.Job;
+import com.ibm.ml.ilog.Progress;
+import com.ibm.ml.ilog.ProgressListener;
+import com.ibm.ml.ilog.TerminationPolicy;
+import com.typesafe.config.Config;
 import ilog.concert.IloException;
 
 public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
@@ -30,12 +70,30 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
 
 
     private final Set<String> completedStatus = new java.util.HashSet<>(Arrays.asList(status));
-
-    private final int statusRefreshRate = config.getInt("wmlconnector.v4.status_rate");
+    // Msec between two checks of the abort flag of a job.
+    private static final long ABORT_CHECK_DELAY = 200;
+
+    private final PollingStrategy pollingStrategy = new PollingStrategy(config);
+    private final int pollingThreads = config.getInt("wmlconnector.v4.polling_threads");
+    private final boolean trackJobs = config.getBoolean("wmlconnector.v4.track_jobs");
+    private final int jobsPageSize = config.getInt("wmlconnector.v4.jobs_page_size");
+    private final int jobsMaxPages = config.getInt("wmlconnector.v4.jobs_max_pages");
+    private final boolean prewarmJob = config.getBoolean("wmlconnector.v4.prewarm.submit_job");
+    private final long deploymentCacheTTL = config.getLong("wmlconnector.v4.deployment_cache_ttl") * 1000;
+    private boolean modelCacheEnabled = config.getBoolean("wmlconnector.v4.model_cache.enabled");
+    private final long modelCacheMinSize = config.getLong("wmlconnector.v4.model_cache.min_size");
+    private ModelUploadCache modelCache = null;
     private final boolean showEngineProgress = config.getBoolean("wmlconnector.v4.engine_progress");
 
     private final String engineLogLevel = config.getString("wmlconnector.v4.engine_log_level");
 
+    // The engine files read by the DO worker from a .gz id too. The other inputs, like the .delta file, are sent as is.
+    private static final Set<String> COMPRESSIBLE = new HashSet<>(Arrays.asList(
+            ".cpo", ".lp", ".mps", ".sav", ".prm", ".sol", ".mst", ".flt", ".ann"));
+    private static final String GZ = ".gz";
+    private final boolean compressInputs = config.getBoolean("wmlconnector.v4.compression.inputs");
+    private final long compressMinSize = config.getLong("wmlconnector.v4.compression.min_size");
+
     private String exportPath = null;
 
 
@@ -61,7 +119,7 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
         resultFormat = format;
         logger.info("Using " + sslContextName + " SSL Context with WML.");
         logger.info("Using " + (tokenRefreshRate / 1000 / 60) + " minutes as token refresh rate");
-        logger.info("Using " + statusRefreshRate + " msec as status refresh rate");
+        logger.info("Using " + pollingStrategy + " as status refresh rate");
         if (config.hasPath("wmlconnector.v4.export_path")) {
             String path = config.getString("wmlconnector.v4.export_path");
             File f = new File(path);
@@ -71,6 +129,7 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
                 logger.error("Path " + path + "does not exist. Ignoring debug export action.");
         } else
             logger.info("No export path defined.");
+        addTerminationPolicies();
     }
 
 
@@ -78,10 +137,14 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
         String deployment_id;
         String job_id;
         JSONObject status = null;
+        final JobProgress progress;
+        volatile boolean cancelled = false;
+        long downloadTime = -1;
 
         JobImpl(String deployment_id, String job_id) {
             this.deployment_id = deployment_id;
             this.job_id = job_id;
+            progress = new JobProgress(job_id);
         }
 
         @Override
@@ -91,11 +154,22 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
 
         @Override
         public void updateStatus() throws IloException {
+            long t1 = new Date().getTime();
+            update("output_data,status,solve_state");
+            downloadTime = new Date().getTime() - t1;
+        }
+
+        @Override
+        public void updateState() throws IloException {
+            update("status,solve_state");
+        }
+
+        private void update(String include) throws IloException {
             Map<String, String> headers = getWMLHeaders();
             headers.put(ACCEPT, APPLICATION_JSON);
 
             Map<String, String> params = getWMLParams();
-            params.put("include", "output_data,status,solve_state");
+            params.put("include", include);
             String res = doGet(
                     wml_credentials.get(Credentials.WML_HOST),
                     MLV4_DEPLOYMENT_JOBS + "/" + job_id,
@@ -109,6 +183,57 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
             return status;
         }
 
+        @Override
+        public Progress getProgress() {
+            return progress;
+        }
+
+        @Override
+        public long getQueueTime() {
+            return getDuration(getTime((JSONObject) status.get(METADATA), "created_at"), getTime(getJobStatus(), "running_at"));
+        }
+
+        @Override
+        public long getRunTime() {
+            return getDuration(getTime(getJobStatus(), "running_at"), getTime(getJobStatus(), "completed_at"));
+        }
+
+        @Override
+        public long getDownloadTime() {
+            return downloadTime;
+        }
+
+        /* Msec since the epoch of a timestamp of the job, -1 if unknown. */
+        private long getTime(JSONObject json, String key) {
+            Object time = json == null ? null : json.get(key);
+            if (time == null)
+                return -1;
+            try {
+                return Instant.parse(time.toString()).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return -1;
+            }
+        }
+
+        private long getDuration(long start, long end) {
+            return start < 0 || end < start ? -1 : end - start;
+        }
+
+        /* Refills the progress from the last status. */
+        private JobProgress updateProgress(String state) {
+            if (hasSolveState()) {
+                JSONObject solveState = getSolveState();
+                progress.update(state, (JSONObject) solveState.get(DETAILS), (JSONArray) solveState.get(LATEST_ENGINE_ACTIVITY));
+            } else
+                progress.update(state, null, null);
+            return progress;
+        }
+
+        /* Used when the status comes from the list of jobs. */
+        void setStatus(JSONObject status) {
+            this.status = status;
+        }
+
         private JSONObject getDO() {
             return (JSONObject) ((JSONObject) status.get(ENTITY)).get(DECISION_OPTIMIZATION);
         }
@@ -168,6 +293,21 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
             return log.toString();
         }
 
+        /* Objective of the solution as reported by the engine, NaN if unknown. */
+        double getObjective() {
+            if (!hasSolveState())
+                return Double.NaN;
+            JSONObject details = (JSONObject) getSolveState().get(DETAILS);
+            Object value = details == null ? null : details.get("PROGRESS_CURRENT_OBJECTIVE");
+            if (value == null)
+                return Double.NaN;
+            try {
+                return Double.parseDouble(value.toString());
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+
         @Override
         public HashMap<String, Object> getKPIs() {
             JSONObject details = (JSONObject) getSolveState().get(DETAILS);
@@ -253,19 +393,38 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
             }
             return (solution == null ? null : solution.toString());
         }
+
+        /* True if the output holds a solution file. */
+        boolean hasSolution() {
+            JSONArray output_data = extractOutputData();
+            if (output_data == null)
+                return false;
+            for (Object o : output_data) {
+                String id = (String) ((JSONObject) o).get(ID);
+                if (id.equals("solution.json") || id.equals("solution.xml"))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public InputStream getSolutionStream() {
+            JSONArray output_data = extractOutputData();
+            if (output_data == null)
+                return null;
+            for (Object data : output_data) {
+                JSONObject o = (JSONObject) data;
+                String id = (String) o.get(ID);
+                if (id.equals("solution.json") || id.equals("solution.xml"))
+                    return AsciiInputStream.decodeBase64((String) o.get(CONTENT));
+            }
+            return null;
+        }
     }
 
     @Override
     public JSONObject createDataFromString(String id, String text) {
-        byte[] bytes = text.getBytes();
-        byte[] encoded = Base64.getEncoder().encode(bytes);
-
-        JSONObject data = new JSONObject();
-        data.put(ID, id);
-
-        data.put(CONTENT, new String(encoded));
-
-        return data;
+        return createDataFromBytes(id, text.getBytes());
     }
 
     @Override
@@ -275,16 +434,48 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
     }
 
     public JSONObject createDataFromBytes(String id, byte[] bytes) {
-        byte[] encoded = Base64.getEncoder().encode(bytes);
+        return createDataFromBytes(id, bytes, bytes.length);
+    }
+
+    /*
+    The data of the first length bytes, for example of an export buffer.
+    The engine files are gzipped when they are big enough, the DO worker reads them from their .gz id.
+     */
+    public JSONObject createDataFromBytes(String id, byte[] bytes, int length) {
+        if (isCompressible(id, length)) {
+            bytes = gzip(bytes, length);
+            logger.info("Compressed " + id + " from " + length + " to " + bytes.length + " bytes");
+            length = bytes.length;
+            id = id + GZ;
+        }
+        ByteBuffer buffer = Base64.getEncoder().encode(ByteBuffer.wrap(bytes, 0, length));
+        String encoded = new String(buffer.array(), 0, buffer.limit(), StandardCharsets.US_ASCII);
 
         JSONObject data = new JSONObject();
         data.put(ID, id);
 
-        data.put(CONTENT, new String(encoded));
+        data.put(CONTENT, encoded);
 
         return data;
     }
 
+    private boolean isCompressible(String id, long length) {
+        if (!compressInputs || length < compressMinSize)
+            return false;
+        int dot = id.lastIndexOf('.');
+        return dot >= 0 && COMPRESSIBLE.contains(id.substring(dot));
+    }
+
+    private static byte[] gzip(byte[] bytes, int length) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(length / 4, 512));
+        try (GZIPOutputStream gz = new GZIPOutputStream(out, 64 * 1024)) {
+            gz.write(bytes, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
     private void copyFile(File src, File dest) {
         try (InputStream inputStream = new FileInputStream(src); OutputStream outputStream = new FileOutputStream(dest)) {
             byte[] buffer = new byte[1024];
@@ -327,18 +518,7 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
         return (new Date()).toString().replace(" ", "-").replace(":", "-");
     }
 
-    public byte[] buildPayload(String deployment_id, String sav, String savFileName, JSONArray input_data, Map<String, String> overriden_solve_parameters) {
-        String date = getTimeStamp();
-        if (exportPath != null) {
-            logger.info("Exporting the WML DO input data in " + date);
-            File f = new File(exportPath + "/" + date);
-            f.mkdirs();
-            dump2Disk(input_data, date);
-            String path = getPath(exportPath, date, sav);
-            logger.info("Exporting " + savFileName + " in " + path);
-            copyFile(new File(savFileName), new File(path));
-        }
-
+    private JSONObject buildEnginePayload(String deployment_id, Map<String, String> overriden_solve_parameters) {
         JSONObject payload = new JSONObject();
         payload.put(NAME, "Job_for_" + deployment_id);
         payload.put(SPACE_ID, wml_credentials.get(Credentials.WML_SPACE_ID));
@@ -381,6 +561,148 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
         output_data.add(outxml);
         json_do.put(OUTPUT_DATA, output_data);
 
+        return payload;
+    }
+
+    /*
+    Builds the payload of a job whose model is already stored and given as a data reference:
+    only the small inputs are sent inline.
+     */
+    public HttpEntity buildPayload(String deployment_id, JSONArray input_data, JSONArray input_data_references, Map<String, String> overriden_solve_parameters) {
+        if (exportPath != null) {
+            String date = getTimeStamp();
+            logger.info("Exporting the WML DO input data in " + date);
+            File f = new File(exportPath + "/" + date);
+            f.mkdirs();
+            dump2Disk(input_data, date);
+        }
+        JSONObject payload = buildEnginePayload(deployment_id, overriden_solve_parameters);
+        JSONObject json_do = (JSONObject) payload.get(DECISION_OPTIMIZATION);
+        json_do.put("input_data", input_data);
+        json_do.put("input_data_references", input_data_references);
+        return new ByteArrayEntity(payload.toString().getBytes(StandardCharsets.UTF_8), ContentType.APPLICATION_JSON);
+    }
+
+    /*
+    Builds the payload of a job for a model file.
+    When the model cache is enabled and the model is big enough, the model is uploaded once in COS
+    and only referenced by the next jobs, otherwise it is sent inline.
+     */
+    public HttpEntity buildPayload(String deployment_id, String sav, String savFileName, JSONArray input_data, Map<String, String> overriden_solve_parameters) throws IloException {
+        ModelUploadCache cache = getModelCache(savFileName);
+        if (cache == null)
+            return buildInlinePayload(deployment_id, sav, savFileName, input_data, overriden_solve_parameters);
+        JSONArray input_data_references = new JSONArray();
+        input_data_references.add(cache.getReference(sav, savFileName));
+        return buildPayload(deployment_id, input_data, input_data_references, overriden_solve_parameters);
+    }
+
+    /*
+    Builds the payloads of the same model for several deployments, the model is hashed and uploaded at most once.
+     */
+    public List<HttpEntity> buildPayloads(List<String> deployment_ids, String sav, String savFileName, JSONArray input_data, Map<String, String> overriden_solve_parameters) throws IloException {
+        List<HttpEntity> ret = new ArrayList<>(deployment_ids.size());
+        ModelUploadCache cache = getModelCache(savFileName);
+        JSONArray input_data_references = null;
+        if (cache != null) {
+            input_data_references = new JSONArray();
+            input_data_references.add(cache.getReference(sav, savFileName));
+        }
+        for (String deployment_id : deployment_ids) {
+            if (input_data_references == null)
+                ret.add(buildInlinePayload(deployment_id, sav, savFileName, input_data, overriden_solve_parameters));
+            else
+                ret.add(buildPayload(deployment_id, input_data, input_data_references, overriden_solve_parameters));
+        }
+        return ret;
+    }
+
+    private ModelUploadCache getModelCache(String savFileName) throws IloException {
+        return getModelCache(new File(savFileName).length());
+    }
+
+    private synchronized ModelUploadCache getModelCache(long size) throws IloException {
+        if (!modelCacheEnabled || size < modelCacheMinSize)
+            return null;
+        if (modelCache == null) {
+            modelCache = ModelUploadCache.create(wml_credentials);
+            if (modelCache == null)
+                modelCacheEnabled = false;
+        }
+        return modelCache;
+    }
+
+    /*
+    Uploads the model file in COS if this content is not there yet and returns a data reference with the given id to it.
+    This needs the COS credentials, whatever the model cache configuration.
+     */
+    public JSONObject getModelReference(String id, String filePath) throws IloException {
+        ModelUploadCache cache;
+        synchronized (this) {
+            if (modelCache == null)
+                modelCache = ModelUploadCache.create(wml_credentials);
+            if (modelCache == null)
+                throw new IloException("Referencing a model needs the COS credentials.");
+            cache = modelCache;
+        }
+        return cache.getReference(id, filePath);
+    }
+
+    @Override
+    public void end() {
+        synchronized (this) {
+            if (modelCache != null) {
+                modelCache.end();
+                modelCache = null;
+            }
+        }
+        super.end();
+    }
+
+    /*
+    Builds the payload of a job for a model exported in memory. The buffer is uploaded from memory by the model cache,
+    or gzipped like the other inputs and base64 encoded directly into the request: it is never copied.
+     */
+    public HttpEntity buildPayload(String deployment_id, String sav, ExportSink.Buffer model, JSONArray input_data, Map<String, String> overriden_solve_parameters) throws IloException {
+        ModelUploadCache cache = getModelCache(model.size());
+        if (cache != null) {
+            JSONArray input_data_references = new JSONArray();
+            input_data_references.add(cache.getReference(sav, model.getBytes(), model.size(), model.getDigest()));
+            return buildPayload(deployment_id, input_data, input_data_references, overriden_solve_parameters);
+        }
+        boolean compress = isCompressible(sav, model.size());
+        if (compress)
+            logger.info("Compressing " + sav + " while sending it");
+        return buildInlinePayload(deployment_id, compress ? sav + GZ : sav, null, model.getBytes(), model.size(), compress, input_data, overriden_solve_parameters);
+    }
+
+    public PayloadEntity buildInlinePayload(String deployment_id, String sav, String savFileName, JSONArray input_data, Map<String, String> overriden_solve_parameters) {
+        return buildInlinePayload(deployment_id, sav, savFileName, null, 0, false, input_data, overriden_solve_parameters);
+    }
+
+    private PayloadEntity buildInlinePayload(String deployment_id, String sav, String savFileName, byte[] content, int length, boolean gzip, JSONArray input_data, Map<String, String> overriden_solve_parameters) {
+        String date = getTimeStamp();
+        if (exportPath != null) {
+            logger.info("Exporting the WML DO input data in " + date);
+            File f = new File(exportPath + "/" + date);
+            f.mkdirs();
+            dump2Disk(input_data, date);
+            String path = getPath(exportPath, date, sav);
+            if (content == null) {
+                logger.info("Exporting " + savFileName + " in " + path);
+                copyFile(new File(savFileName), new File(path));
+            } else {
+                logger.info("Exporting " + sav + " in " + path);
+                try (OutputStream os = gzip ? new GZIPOutputStream(new FileOutputStream(path)) : new FileOutputStream(path)) {
+                    os.write(content, 0, length);
+                } catch (IOException e) {
+                    logger.warn("Ignoring error: " + e.getMessage());
+                }
+            }
+        }
+
+        JSONObject payload = buildEnginePayload(deployment_id, overriden_solve_parameters);
+        JSONObject json_do = (JSONObject) payload.get(DECISION_OPTIMIZATION);
         json_do.put("input_data", "XXX");
 
         String toto = payload.toString();
@@ -393,28 +715,25 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
         String json = input_data.toString();
         json = json.substring(0, json.length() - 1);
 
-        byte[] encoded = getFileContentAsEncoded64(savFileName);
-
-        byte[] jsid = (before + json + (json.length() > 1 ? "," : "") + "{\"" + ID + "\": \"" + sav + "\"").getBytes();
-        byte[] jscontent = (",\"" + CONTENT + "\": \"").getBytes();
+        byte[] jsid = (before + json + (json.length() > 1 ? "," : "") + "{\"" + ID + "\": \"" + sav + "\"" + ",\"" + CONTENT + "\": \"").getBytes();
         byte[] jsend = ("\"}]" + after).getBytes();
 
-        byte[] ret = new byte[jsid.length + jscontent.length + jsend.length + encoded.length];
-        System.arraycopy(jsid, 0, ret, 0, jsid.length);
-        System.arraycopy(jscontent, 0, ret, jsid.length, jscontent.length);
-        System.arraycopy(encoded, 0, ret, jscontent.length + jsid.length, encoded.length);
-        System.arraycopy(jsend, 0, ret, encoded.length + jscontent.length + jsid.length, jsend.length);
+        // The model is encoded while being sent, nothing big is kept in memory.
+        PayloadEntity ret = content == null ? new PayloadEntity(jsid, Paths.get(savFileName), jsend) :
+                new PayloadEntity(jsid, content, length, gzip, jsend);
+        if (gzip)
+            logger.info("Size of the model file " + sav + " before compression is " + ((length + 0.0) / 1024.0 / 1024.0) + " MB");
+        else
+            logger.info("Size of the encoded model file " + (content == null ? savFileName : sav) + " is " + ((ret.getEncodedLength() + 0.0) / 1024.0 / 1024.0) + " MB");
 
-        if (ret.length > 100000000) {
-            logger.error("!!!! Beware: you are certainly above the WML size limits: " + ret.length + " bytes for the model !!!");
+        if (ret.getContentLength() > 100000000) {
+            logger.error("!!!! Beware: you are certainly above the WML size limits: " + ret.getContentLength() + " bytes for the model !!!");
         }
         if (exportPath != null) {
             String path = getPath(exportPath, date, "/wml_payload.wml");
             logger.info("Exporting the WML payload to " + path);
-            try {
-                OutputStream os = new FileOutputStream(path);
-                os.write(ret);
-                os.close();
+            try (OutputStream os = new FileOutputStream(path)) {
+                ret.writeTo(os);
             }
             catch (IOException e){
                 logger.warn("Ingornig error:" +e.getMessage());
@@ -503,10 +822,15 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
         headers.put(CONTENT_TYPE, APPLICATION_JSON);
 
         long t1 = new Date().getTime();
-        String res = doPost(
-                wml_credentials.get(Credentials.WML_HOST),
-                MLV4_DEPLOYMENT_JOBS,
-                getWMLParams(), headers, payload.toString());
+        String res = null;
+        try {
+            res = doPost(
+                    wml_credentials.get(Credentials.WML_HOST),
+                    MLV4_DEPLOYMENT_JOBS,
+                    getWMLParams(), headers, payload.toString());
+        } catch (HttpStatusException e) {
+            throw invalidateDeployment(deployment_id, e);
+        }
         long t2 = new Date().getTime();
 
         JSONObject json = parseJson(res);
@@ -521,6 +845,11 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
 
     public Job createEngineJob(String deployment_id,
                                byte[] payload) throws IloException {
+        return createEngineJob(deployment_id, new ByteArrayEntity(payload, ContentType.APPLICATION_JSON));
+    }
+
+    public Job createEngineJob(String deployment_id,
+                               HttpEntity payload) throws IloException {
         logger.info("Create engine job");
 
         Map<String, String> headers = getWMLHeaders();
@@ -528,10 +857,15 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
         headers.put(CONTENT_TYPE, APPLICATION_JSON);
 
         long t1 = new Date().getTime();
-        String res = doPost(
-                wml_credentials.get(Credentials.WML_HOST),
-                MLV4_DEPLOYMENT_JOBS,
-                getWMLParams(), headers, payload);
+        String res = null;
+        try {
+            res = doPost(
+                    wml_credentials.get(Credentials.WML_HOST),
+                    MLV4_DEPLOYMENT_JOBS,
+                    getWMLParams(), headers, payload);
+        } catch (HttpStatusException e) {
+            throw invalidateDeployment(deployment_id, e);
+        }
         //HACK
         int entityIndex = res.indexOf("\"" + ENTITY + "\"");
         int metadataIndex = res.indexOf("\"" + METADATA + "\"");
@@ -552,57 +886,156 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
         return new JobImpl(deployment_id, job_id);
     }
 
-    private String waitCompletion(Job job) throws IloException {
+    /* One status check: refreshes the state of the job and logs its progress. */
+    private String checkState(Job job) throws IloException {
+        // The output data is only downloaded once the job is over.
+        job.updateState();
+        return logState(job);
+    }
+
+    private String logState(Job job) {
         String state = null;
-        do {
-            try {
-                Thread.sleep(statusRefreshRate);
-            } catch (InterruptedException ex) {
-                Thread.currentThread().interrupt();
+        JobProgress progress = null;
+        try {
+            state = job.getState();
+            progress = ((JobImpl) job).updateProgress(state);
+            if (job.hasSolveState()) {
+                if (job.hasSolveStatus())
+                    logger.info("WML Solve Status : " + job.getSolveStatus());
+                if (showEngineProgress && job.hasLatestEngineActivity())
+                    logger.info("Latest Engine Activity : " + job.getLatestEngineActivity());
+
+                for (int i = 0; i < progress.getNumKPIs(); i++)
+                    logger.info("KPI: " + progress.getKPIName(i) + " = " + progress.getKPIValue(i));
             }
+        } catch (Exception e) {
+            logger.error("Error extractState: " + e);
+        }
 
-            job.updateStatus();
+        logger.info("Job State: " + state);
+        if (state == null || state.equals(FAILED)) {
+            logger.error("WML Failure: " + job.getFailure());
+        }
+        if (progress != null && !completedStatus.contains(state)) {
+            notifyProgress(progress);
+            if (progress.isAborted())
+                cancel(job);
+        }
+        return state;
+    }
+
+    private final List<ProgressListener> progressListeners = new CopyOnWriteArrayList<>();
 
+    @Override
+    public void addProgressListener(ProgressListener listener) {
+        progressListeners.add(listener);
+    }
+
+    @Override
+    public void removeProgressListener(ProgressListener listener) {
+        progressListeners.remove(listener);
+    }
+
+    /* The termination policies set in the configuration. */
+    private void addTerminationPolicies() {
+        double gap = config.getDouble("wmlconnector.v4.termination.gap");
+        if (gap > 0)
+            addProgressListener(TerminationPolicy.gapBelow(gap));
+        long stall = config.getLong("wmlconnector.v4.termination.stall");
+        if (stall > 0)
+            addProgressListener(TerminationPolicy.noImprovement(stall * 1000));
+        long deadline = config.getLong("wmlconnector.v4.termination.deadline");
+        if (deadline > 0)
+            addProgressListener(TerminationPolicy.deadline(deadline * 1000));
+        if (!progressListeners.isEmpty())
+            logger.info("Using termination policies " + progressListeners);
+    }
+
+    private void notifyProgress(Progress progress) {
+        for (ProgressListener listener : progressListeners) {
             try {
-                state = job.getState();
-                if (job.hasSolveState()) {
-                    if (job.hasSolveStatus())
-                        logger.info("WML Solve Status : " + job.getSolveStatus());
-                    if (showEngineProgress && job.hasLatestEngineActivity())
-                        logger.info("Latest Engine Activity : " + job.getLatestEngineActivity());
+                listener.progress(progress);
+            } catch (RuntimeException e) {
+                logger.warn("Ignoring error in progress listener: " + e.getMessage());
+            }
+        }
+    }
 
-                    HashMap<String, Object> kpis = job.getKPIs();
+    /* Cancels the job once, whoever asks for it. */
+    private void cancel(Job job) {
+        JobImpl impl = (JobImpl) job;
+        synchronized (impl) {
+            if (impl.cancelled)
+                return;
+            impl.cancelled = true;
+        }
+        logger.info("Aborting job " + job.getId());
+        try {
+            cancelJob(job.getId());
+        } catch (IloException e) {
+            logger.warn("Cannot cancel job " + job.getId() + ": " + e.getMessage());
+        }
+    }
+
+    /* A job whose output cannot be downloaded has no solution: this is an error, not a warning. */
+    private void fetchOutputData(Job job) throws IloException {
+        try {
+            job.updateStatus();
+        } catch (IloException e) {
+            throw new IloException("Cannot get the output data of job " + job.getId() + ": " + e.getMessage());
+        }
+        // The final objective, bound and gap.
+        ((JobImpl) job).updateProgress(job.getState());
+    }
 
-                    Iterator<String> keys = kpis.keySet().iterator();
+    private String waitCompletion(Job job) throws IloException {
+        return waitCompletion(job, null);
+    }
 
-                    while (keys.hasNext()) {
-                        String kpi = keys.next();
-                        logger.info("KPI: " + kpi + " = " + kpis.get(kpi));
-                    }
+    /*
+    Waits for the end of the job. Once aborted is true, its progress is aborted or the thread is interrupted, the job is cancelled
+    and waited for until WML reports it as over: its output holds the incumbent if the engine had one.
+     */
+    private String waitCompletion(Job job, BooleanSupplier aborted) throws IloException {
+        JobImpl impl = (JobImpl) job;
+        String state = null;
+        int attempt = 0;
+        boolean interrupted = false;
+        do {
+            long delay = pollingStrategy.getDelay(attempt++);
+            long end = new Date().getTime() + delay;
+            while (!impl.cancelled && delay > 0) {
+                try {
+                    Thread.sleep(Math.min(delay, ABORT_CHECK_DELAY));
+                } catch (InterruptedException ex) {
+                    interrupted = true;
                 }
-            } catch (Exception e) {
-                logger.error("Error extractState: " + e);
+                if (interrupted || impl.progress.isAborted() || (aborted != null && aborted.getAsBoolean()))
+                    cancel(job);
+                delay = end - new Date().getTime();
             }
-
-            logger.info("Job State: " + state);
-            if (state == null || state.equals(FAILED)) {
-                logger.error("WML Failure: " + job.getFailure());
+            if (impl.cancelled) {
+                // Thread.sleep would fail at once in an interrupted thread.
+                try {
+                    if (!interrupted)
+                        Thread.sleep(pollingStrategy.getDelay(0));
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
             }
+
+            state = checkState(job);
         } while (!completedStatus.contains(state));
-        if (state != null && state.equals(COMPLETED)) {
-            job.extractOutputData();
-            //logger.info("output_data = " + output_data);
+        try {
+            fetchOutputData(job);
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
         }
         return state;
     }
 
-    public Job createAndRunEngineJob(String deployment_id,
-                                     byte[] input_data) throws IloException {
-        Job job = createEngineJob(deployment_id, input_data);
-
-        String state = waitCompletion(job);
-
-        logger.info("Job final state is " + state);
+    private void dumpAnswer(Job job) {
         if (exportPath != null) {
             String date = getTimeStamp();
             logger.info("Dumping the WML output in " + date);
@@ -621,9 +1054,573 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
                 logger.warn("Ignoring error: "+e.getMessage());
             }
         }
+    }
+
+    public Job createAndRunEngineJob(String deployment_id,
+                                     byte[] input_data) throws IloException {
+        return createAndRunEngineJob(deployment_id, new ByteArrayEntity(input_data, ContentType.APPLICATION_JSON));
+    }
+
+    public Job createAndRunEngineJob(String deployment_id,
+                                     HttpEntity input_data) throws IloException {
+        return createAndRunEngineJob(deployment_id, input_data, null);
+    }
+
+    /*
+    Runs the job, cancelling it once aborted is true. The job of an aborted solve is returned too,
+    with the incumbent if the engine had found one.
+     */
+    public Job createAndRunEngineJob(String deployment_id,
+                                     HttpEntity input_data, BooleanSupplier aborted) throws IloException {
+        Job job = createEngineJob(deployment_id, input_data);
+
+        String state = waitCompletion(job, aborted);
+
+        logger.info("Job final state is " + state);
+        dumpAnswer(job);
         return job;
     }
 
+    private static ScheduledExecutorService scheduler = null;
+
+    // Failed status checks in a row before a job is given up.
+    private static final int MAX_CHECK_FAILURES = 5;
+
+    /* A request rejected for good: the job is unknown, deleted or not ours. Timeouts and throttling are retried. */
+    private static boolean isClientError(Throwable e) {
+        if (!(e instanceof HttpStatusException))
+            return false;
+        int code = ((HttpStatusException) e).getStatusCode();
+        return code >= 400 && code < 500 && code != 408 && code != 429;
+    }
+
+    /* All the asynchronous jobs of the process are polled by the same threads. */
+    private static synchronized ScheduledExecutorService getScheduler(int threads) {
+        if (scheduler == null) {
+            logger.info("Starting " + threads + " job polling threads");
+            scheduler = Executors.newScheduledThreadPool(threads, new DaemonThreadFactory("wml-job-poller"));
+        }
+        return scheduler;
+    }
+
+    /*
+    Polls an asynchronous job until it is over, one status check per run.
+     */
+    private class JobPolling implements Runnable {
+        private final Job job;
+        private final CompletableFuture<Job> future;
+        private final boolean dump;
+        // The backoff of this job.
+        private int attempt = 0;
+        // Consecutive failed checks.
+        private int failures = 0;
+        // When the tracker must check the job next, msec since the epoch.
+        private long due = 0;
+
+        JobPolling(Job job, CompletableFuture<Job> future, boolean dump) {
+            this.job = job;
+            this.future = future;
+            this.dump = dump;
+        }
+
+        Connector connector() {
+            return Connector.this;
+        }
+
+        /* The next check of the job, with its backoff. */
+        void backoff(long now) {
+            due = now + pollingStrategy.getDelay(attempt++);
+        }
+
+        void schedule() {
+            getScheduler(pollingThreads).schedule(this, pollingStrategy.getDelay(attempt++), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone())
+                return;
+            try {
+                String state = checkState(job);
+                if (!completedStatus.contains(state)) {
+                    schedule();
+                    return;
+                }
+                finish(state);
+            } catch (Throwable e) {
+                if (!failed(e))
+                    schedule();
+            }
+        }
+
+        /*
+        A failed check: the job is given up on a client error, or after too many failures in a row.
+        Returns true if the future was failed, false if the job must be checked again later.
+         */
+        boolean failed(Throwable e) {
+            failures++;
+            if (isClientError(e) || failures >= MAX_CHECK_FAILURES) {
+                logger.error("Giving up job " + job.getId() + " after " + failures + " failed check(s): " + e.getMessage());
+                future.completeExceptionally(e);
+                return true;
+            }
+            logger.warn("Check " + failures + " of job " + job.getId() + " failed, retrying: " + e.getMessage());
+            return false;
+        }
+
+        void finish(String state) {
+            try {
+                fetchOutputData(job);
+            } catch (IloException e) {
+                logger.error(e.getMessage());
+                future.completeExceptionally(e);
+                return;
+            }
+            logger.info("Job " + job.getId() + " final state is " + state);
+            if (dump)
+                dumpAnswer(job);
+            future.complete(job);
+        }
+    }
+
+    /*
+    Deletes the WML job when its future is cancelled.
+     */
+    private class JobCancellation implements BiConsumer<Job, Throwable>, Runnable {
+        private final Job job;
+
+        JobCancellation(Job job) {
+            this.job = job;
+        }
+
+        @Override
+        public void accept(Job result, Throwable error) {
+            if (error instanceof CancellationException)
+                getScheduler(pollingThreads).execute(this);
+        }
+
+        @Override
+        public void run() {
+            logger.info("Cancelling job " + job.getId());
+            try {
+                deleteJob(job.getId());
+            } catch (IloException e) {
+                logger.warn("Ignoring error when cancelling job " + job.getId() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /*
+    Tracks all the asynchronous jobs of a host and space with one list call per tick instead of one call per job.
+    The trackers are shared by all the connectors of the process, like the polling threads. A tick pages through the
+    jobs list until all the due jobs are seen, for at most jobs_max_pages pages: the due jobs which were not listed,
+    for example because they are older than the pages read, are checked one by one.
+    Only the jobs which are over get their details (output data) downloaded.
+     */
+    private static class JobTracker implements Runnable {
+        private static final Map<String, JobTracker> trackers = new HashMap<>();
+
+        static synchronized JobTracker get(String host, String space_id) {
+            String key = host + "/" + space_id;
+            JobTracker ret = trackers.get(key);
+            if (ret == null) {
+                ret = new JobTracker();
+                trackers.put(key, ret);
+            }
+            return ret;
+        }
+
+        private final Map<String, JobPolling> tracked = new LinkedHashMap<>();
+        // Serializes the ticks.
+        private final Object ticking = new Object();
+        private ScheduledFuture<?> next = null;
+        private long nextTime = Long.MAX_VALUE;
+        // Consecutive ticks whose list call failed.
+        private int failures = 0;
+
+        synchronized void add(JobPolling polling) {
+            tracked.put(polling.job.getId(), polling);
+            // Each job has its own backoff: a new job is checked quickly without resetting the one of the others.
+            polling.backoff(new Date().getTime());
+            scheduleAt(polling.due, polling.connector().pollingThreads);
+        }
+
+        /* Makes sure that a tick runs at the given time at the latest. */
+        private void scheduleAt(long time, int threads) {
+            if (next != null && nextTime <= time)
+                return;
+            if (next != null)
+                next.cancel(false);
+            nextTime = time;
+            next = getScheduler(threads).schedule(this, Math.max(0, time - new Date().getTime()), TimeUnit.MILLISECONDS);
+        }
+
+        private synchronized Map<String, JobPolling> getPending() {
+            Iterator<JobPolling> it = tracked.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().future.isDone())
+                    it.remove();
+            }
+            return new LinkedHashMap<>(tracked);
+        }
+
+        private synchronized void remove(String id) {
+            tracked.remove(id);
+        }
+
+        /* The checked jobs back off, the next tick runs when the first job is due. */
+        private synchronized void reschedule(Collection<JobPolling> checked) {
+            long now = new Date().getTime();
+            for (JobPolling polling : checked)
+                polling.backoff(now);
+            JobPolling first = null;
+            Iterator<JobPolling> it = tracked.values().iterator();
+            while (it.hasNext()) {
+                JobPolling polling = it.next();
+                if (polling.future.isDone())
+                    it.remove();
+                else if (first == null || polling.due < first.due)
+                    first = polling;
+            }
+            if (first != null)
+                scheduleAt(first.due, first.connector().pollingThreads);
+        }
+
+        private synchronized int fail() {
+            return ++failures;
+        }
+
+        private String getDeploymentFilter(Collection<JobPolling> pending) {
+            String deployment_id = null;
+            for (JobPolling polling : pending) {
+                String id = ((JobImpl) polling.job).deployment_id;
+                if (deployment_id == null)
+                    deployment_id = id;
+                else if (!deployment_id.equals(id))
+                    return null;
+            }
+            return deployment_id;
+        }
+
+        private void update(JobPolling polling, String state) {
+            if (polling.connector().completedStatus.contains(state)) {
+                remove(polling.job.getId());
+                polling.finish(state);
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                next = null;
+                nextTime = Long.MAX_VALUE;
+            }
+            List<JobPolling> checked = new ArrayList<>();
+            synchronized (ticking) {
+                tick(checked);
+            }
+            reschedule(checked);
+        }
+
+        private void tick(List<JobPolling> checked) {
+            Map<String, JobPolling> pending = getPending();
+            long now = new Date().getTime();
+            Map<String, JobPolling> due = new LinkedHashMap<>();
+            for (JobPolling polling : pending.values()) {
+                if (polling.due <= now)
+                    due.put(polling.job.getId(), polling);
+            }
+            checked.addAll(due.values());
+            if (due.isEmpty())
+                return;
+            // A list call only pays off for several jobs.
+            if (due.size() > 1) {
+                try {
+                    list(pending, due);
+                    synchronized (this) {
+                        failures = 0;
+                    }
+                } catch (Throwable e) {
+                    // The jobs stay tracked and are listed again at the next tick, unless WML keeps failing.
+                    int n = fail();
+                    if (n < MAX_CHECK_FAILURES) {
+                        logger.warn("Listing the jobs failed " + n + " time(s) in a row, retrying: " + e.getMessage());
+                        return;
+                    }
+                    logger.error("Giving up " + due.size() + " tracked jobs after " + n + " failed list calls: " + e.getMessage());
+                    for (JobPolling polling : due.values()) {
+                        remove(polling.job.getId());
+                        polling.future.completeExceptionally(e);
+                    }
+                    return;
+                }
+            }
+
+            // Not listed within the pages read: check them one by one.
+            for (JobPolling polling : due.values()) {
+                try {
+                    update(polling, polling.connector().checkState(polling.job));
+                    polling.failures = 0;
+                } catch (Throwable e) {
+                    if (polling.failed(e))
+                        remove(polling.job.getId());
+                }
+            }
+        }
+
+        /*
+        Updates the listed jobs, until all the due ones are seen or the page cap is reached.
+        The due jobs seen are removed from due.
+         */
+        private void list(Map<String, JobPolling> pending, Map<String, JobPolling> due) throws IloException {
+            // All the connectors of the tracker share the host and space, any of them can list.
+            Connector connector = due.values().iterator().next().connector();
+            String deployment_id = getDeploymentFilter(pending.values());
+            int count = due.size();
+            String start = null;
+            int pages = 0;
+            do {
+                Map<String, JSONObject> states = new HashMap<>();
+                start = connector.listJobStates(deployment_id, start, states);
+                pages++;
+                for (Entry<String, JSONObject> state : states.entrySet()) {
+                    JobPolling polling = pending.remove(state.getKey());
+                    if (polling != null) {
+                        due.remove(state.getKey());
+                        ((JobImpl) polling.job).setStatus(state.getValue());
+                        update(polling, polling.connector().logState(polling.job));
+                    }
+                }
+            } while (start != null && !due.isEmpty() && pages < connector.jobsMaxPages);
+            logger.info("Checked the status of " + (count - due.size()) + " of " + count + " due jobs with " + pages + " list call(s)");
+        }
+    }
+
+    private JSONObject listJobs(String deployment_id, String start) throws IloException {
+        Map<String, String> headers = getWMLHeaders();
+        headers.put(ACCEPT, APPLICATION_JSON);
+
+        Map<String, String> params = getWMLParams();
+        params.put("limit", String.valueOf(jobsPageSize));
+        if (deployment_id != null)
+            params.put("deployment_id", deployment_id);
+        if (start != null)
+            params.put("start", start);
+
+        String res = doGet(
+                wml_credentials.get(Credentials.WML_HOST),
+                MLV4_DEPLOYMENT_JOBS,
+                params, headers);
+        return parseJson(res);
+    }
+
+    /*
+    Lists a page of jobs, with their status if the list has it, into states by job id.
+    Returns the start token of the next page, null for the last page.
+     */
+    private String listJobStates(String deployment_id, String start, Map<String, JSONObject> states) throws IloException {
+        JSONObject json = listJobs(deployment_id, start);
+        JSONArray resources = (JSONArray) json.get(RESOURCES);
+        if (resources != null) {
+            for (Object o : resources) {
+                JSONObject resource = (JSONObject) o;
+                // Jobs listed without their status are checked one by one.
+                if (hasState(resource))
+                    states.put((String) ((JSONObject) resource.get(METADATA)).get(ID), resource);
+            }
+        }
+        return getNextStart(json);
+    }
+
+    private boolean hasState(JSONObject resource) {
+        JSONObject entity = (JSONObject) resource.get(ENTITY);
+        if (entity == null || !entity.containsKey(DECISION_OPTIMIZATION))
+            return false;
+        JSONObject status = (JSONObject) ((JSONObject) entity.get(DECISION_OPTIMIZATION)).get(STATUS);
+        return status != null && status.containsKey(STATE);
+    }
+
+    /* The start token of the next page, null for the last page. */
+    private String getNextStart(JSONObject json) {
+        if (!json.containsKey("next"))
+            return null;
+        String href = (String) ((JSONObject) json.get("next")).get("href");
+        if (href == null)
+            return null;
+        int where = href.indexOf("start=");
+        if (where < 0)
+            return null;
+        String start = href.substring(where + 6);
+        int end = start.indexOf('&');
+        return end < 0 ? start : start.substring(0, end);
+    }
+
+    private CompletableFuture<Job> poll(Job job, boolean dump) {
+        CompletableFuture<Job> future = new CompletableFuture<>();
+        future.whenComplete(new JobCancellation(job));
+        if (trackJobs)
+            JobTracker.get(wml_credentials.get(Credentials.WML_HOST), wml_credentials.get(Credentials.WML_SPACE_ID))
+                    .add(new JobPolling(job, future, dump));
+        else
+            new JobPolling(job, future, dump).schedule();
+        return future;
+    }
+
+    public CompletableFuture<Job> submitEngineJobAsync(String deployment_id,
+                                                       HttpEntity input_data) throws IloException {
+        return poll(createEngineJob(deployment_id, input_data), true);
+    }
+
+    /*
+    Runs the same model on several deployments at once.
+    Only a job completed with a solution can win: the failed, cancelled or solution-less jobs are skipped and the race
+    goes on with the others. Without deadline (or without objective sense), the first job with a solution wins.
+    With a deadline in msec, counted from the end of the first job with a solution, the jobs which end before it are
+    compared and the one with the best objective wins.
+    If no job has a solution, a completed job with a solve state (for example an infeasible model) is returned.
+    Once aborted is true or the thread is interrupted, all the jobs are cancelled and the race waits for their incumbents.
+    The other jobs are cancelled and deleted, the winner must be deleted by the caller.
+     */
+    public Job race(List<String> deployment_ids, List<HttpEntity> payloads, long deadline, Boolean minimize) throws IloException {
+        return race(deployment_ids, payloads, deadline, minimize, null);
+    }
+
+    public Job race(List<String> deployment_ids, List<HttpEntity> payloads, long deadline, Boolean minimize, BooleanSupplier aborted) throws IloException {
+        if (deployment_ids.size() != payloads.size() || deployment_ids.isEmpty())
+            throw new IloException("Bad race: " + deployment_ids.size() + " deployments for " + payloads.size() + " payloads.");
+        logger.info("Racing " + deployment_ids.size() + " deployments " + deployment_ids);
+        List<Job> jobs = new ArrayList<>(deployment_ids.size());
+        List<CompletableFuture<Job>> futures = new ArrayList<>(deployment_ids.size());
+        BlockingQueue<CompletableFuture<Job>> ended = new LinkedBlockingQueue<>();
+        JobImpl best = null;
+        JobImpl fallback = null;
+        boolean interrupted = false;
+        try {
+            for (int i = 0; i < deployment_ids.size(); i++) {
+                Job job = createEngineJob(deployment_ids.get(i), payloads.get(i));
+                jobs.add(job);
+                CompletableFuture<Job> future = poll(job, true);
+                future.whenComplete(new RaceArrival(future, ended));
+                futures.add(future);
+            }
+            boolean compare = deadline > 0 && minimize != null;
+            boolean cancelled = false;
+            // The deadline runs from the end of the first job with a solution.
+            long end = Long.MAX_VALUE;
+            for (int pending = futures.size(); pending > 0; ) {
+                CompletableFuture<Job> future = null;
+                if (compare && best != null) {
+                    long remaining = end - new Date().getTime();
+                    if (remaining <= 0)
+                        break;
+                    remaining = Math.min(remaining, ABORT_CHECK_DELAY);
+                    try {
+                        future = ended.poll(remaining, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                } else {
+                    try {
+                        future = ended.poll(ABORT_CHECK_DELAY, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (!cancelled && (interrupted || (aborted != null && aborted.getAsBoolean()))) {
+                    // The cancelled jobs still end with their incumbent, if any.
+                    cancelled = true;
+                    logger.info("The race is aborted, cancelling its jobs.");
+                    for (Job job : jobs)
+                        cancel(job);
+                }
+                if (future == null)
+                    continue;
+                pending--;
+                JobImpl job;
+                try {
+                    job = (JobImpl) future.getNow(null);
+                } catch (CompletionException e) {
+                    logger.warn("A job of the race failed: " + e.getCause().getMessage());
+                    continue;
+                } catch (CancellationException e) {
+                    continue;
+                }
+                if (!COMPLETED.equals(job.getState()) || !job.hasSolveState() || !job.hasSolution()) {
+                    logger.warn("Job " + job.getId() + " of the race ended without solution: " + job.getState());
+                    if (fallback == null && COMPLETED.equals(job.getState()) && job.hasSolveState())
+                        fallback = job;
+                    continue;
+                }
+                if (!compare) {
+                    best = job;
+                    break;
+                }
+                if (best == null)
+                    end = new Date().getTime() + deadline;
+                if (best == null || isBetter(job.getObjective(), best.getObjective(), minimize))
+                    best = job;
+            }
+            if (best == null)
+                best = fallback;
+        } finally {
+            for (CompletableFuture<Job> future : futures)
+                releaseRacer(future, best);
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        if (best == null)
+            throw new IloException("No job of the race ended with a solve state.");
+        logger.info("Job " + best.getId() + " of deployment " + best.deployment_id + " won the race");
+        return best;
+    }
+
+    private static boolean isBetter(double objective, double best, boolean minimize) {
+        if (Double.isNaN(objective))
+            return false;
+        if (Double.isNaN(best))
+            return true;
+        return minimize ? objective < best : objective > best;
+    }
+
+    /* Cancels a job of a race which is still running, deletes it if it is over and lost. */
+    private void releaseRacer(CompletableFuture<Job> future, Job winner) {
+        if (future.cancel(true))
+            return;
+        try {
+            Job job = future.getNow(null);
+            if (job != null && job != winner)
+                deleteJob(job.getId());
+        } catch (CompletionException | CancellationException e) {
+            // Nothing to delete.
+        } catch (IloException e) {
+            logger.warn("Ignoring error when deleting a job of the race: " + e.getMessage());
+        }
+    }
+
+    /* Queues the jobs of a race as they end. */
+    private static class RaceArrival implements BiConsumer<Job, Throwable> {
+        private final CompletableFuture<Job> future;
+        private final BlockingQueue<CompletableFuture<Job>> ended;
+
+        RaceArrival(CompletableFuture<Job> future, BlockingQueue<CompletableFuture<Job>> ended) {
+            this.future = future;
+            this.ended = ended;
+        }
+
+        @Override
+        public void accept(Job job, Throwable error) {
+            ended.offer(future);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Job> submitJobAsync(String deployment_id,
+                                                 JSONArray input_data,
+                                                 JSONArray input_data_references,
+                                                 JSONArray output_data,
+                                                 JSONArray output_data_references, HashMap<String, String> custom) throws IloException {
+        return poll(createJob(deployment_id, input_data, input_data_references, output_data, output_data_references, custom), false);
+    }
 
     @Override
     public Job createAndRunJob(String deployment_id,
@@ -792,9 +1789,28 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
 
     @Override
     public void deleteDeployment(String id) throws IloException {
+        DeploymentCache.invalidate(id);
         delete(MLV4_DEPLOYMENTS + "/" + id, new HashMap<>());
     }
 
+    /* A deployment which is not found anymore must not be reused. */
+    private IloException invalidateDeployment(String deployment_id, HttpStatusException e) {
+        if (e.isNotFound()) {
+            logger.warn("Deployment " + deployment_id + " not found, removing it from the cache.");
+            DeploymentCache.invalidate(deployment_id);
+        }
+        return e;
+    }
+
+    /*
+    Stops a running job without removing it, so that its status and output can still be read.
+     */
+    public void cancelJob(String id) throws IloException {
+        Map<String, String> hardDel = new HashMap<String, String>();
+        hardDel.put("hard_delete", "false");
+        delete(MLV4_DEPLOYMENT_JOBS + "/" + id, hardDel);
+    }
+
     @Override
     public void deleteJob(String id) throws IloException {
         String hardDelete = "true";
@@ -856,26 +1872,169 @@ public class Connector extends HttpUtils implements com.ibm.ml.ilog.Connector {
 
     @Override
     public String getOrMakeDeployment(String name, boolean isCplex) throws IloException {
+        return getOrMakeDeployment(name, isCplex, wml_runtime, wml_size, wml_nodes);
+    }
+
+    /*
+    Looks up or creates the deployment for another runtime, size or number of nodes than the ones of this connector.
+     */
+    public String getOrMakeDeployment(Runtime runtime, TShirtSize size, int nodes, boolean isCplex) throws IloException {
+        return getOrMakeDeployment(com.ibm.ml.ilog.Connector.getDeploymentName(runtime, size, nodes, isCplex), isCplex, runtime, size, nodes);
+    }
+
+    /*
+    Looks up or creates the deployment of the WmlCplex worker (src/main/resources/worker/main.py) for the runtime, size
+    and number of nodes of this connector. It runs the CPLEX jobs the stock deployments cannot run, like populate.
+     */
+    public String getOrMakeWorkerDeployment() throws IloException {
+        String name = com.ibm.ml.ilog.Connector.getWorkerDeploymentName(wml_runtime, wml_size, wml_nodes);
+        return getOrMakeDeployment(name, null, wml_runtime, wml_size, wml_nodes);
+    }
+
+    /* isCplex is null for the worker. */
+    private String getOrMakeDeployment(String name, Boolean isCplex, Runtime runtime, TShirtSize size, int nodes) throws IloException {
+        String key = DeploymentCache.getKey(wml_credentials.get(Credentials.WML_HOST), wml_credentials.get(Credentials.WML_SPACE_ID), name);
+        String deployment_id = DeploymentCache.get(key);
+        if (deployment_id != null) {
+            logger.info("Reusing cached deployment_id " + deployment_id);
+            return deployment_id;
+        }
+        // Concurrent lookups of the same deployment wait for the first one.
+        synchronized (DeploymentCache.getLock(key)) {
+            deployment_id = DeploymentCache.get(key);
+            if (deployment_id == null) {
+                deployment_id = lookupOrMakeDeployment(name, isCplex, runtime, size, nodes);
+                DeploymentCache.put(key, deployment_id, deploymentCacheTTL);
+            } else
+                logger.info("Reusing cached deployment_id " + deployment_id);
+        }
+        return deployment_id;
+    }
+
+    private String lookupOrMakeDeployment(String name, Boolean isCplex, Runtime runtime, TShirtSize size, int nodes) throws IloException {
         String deployment_id = this.getDeploymentIdByName(name);
         if (deployment_id == null) {
             logger.info("Creating model and deployment");
-            logger.info("Create Empty " + wml_runtime + " Model");
-            ModelType type = null;
-            if (isCplex)
-                type = com.ibm.ml.ilog.Connector.getCPLEXModelType(wml_runtime);
-            else
-                type = com.ibm.ml.ilog.Connector.getCPOModelType(wml_runtime);
-
-            String model_id = this.createNewModel(name, wml_runtime, type, null, null);
+            String model_id;
+            if (isCplex == null) {
+                logger.info("Create " + runtime + " Worker Model");
+                File archive = makeWorkerArchive();
+                try {
+                    model_id = this.createNewModel(name, runtime, com.ibm.ml.ilog.Connector.getDOCPLEXModelType(runtime), archive.getAbsolutePath(), null);
+                } finally {
+                    if (!archive.delete())
+                        logger.warn("Cannot delete " + archive.getAbsolutePath());
+                }
+            } else {
+                logger.info("Create Empty " + runtime + " Model");
+                ModelType type = null;
+                if (isCplex)
+                    type = com.ibm.ml.ilog.Connector.getCPLEXModelType(runtime);
+                else
+                    type = com.ibm.ml.ilog.Connector.getCPOModelType(runtime);
+
+                model_id = this.createNewModel(name, runtime, type, null, null);
+            }
             logger.info("model_id = " + model_id);
 
-            deployment_id = this.deployModel(name, model_id, wml_size, wml_nodes);
+            deployment_id = this.deployModel(name, model_id, size, nodes);
         } else
             logger.info("Reusing deployment_id " + deployment_id);
         logger.info("deployment_id = " + deployment_id);
         return deployment_id;
     }
 
+    private static final String WORKER = "/worker/main.py";
+
+    /* The model archive of the worker deployment: its main.py, read from the class path. */
+    private static File makeWorkerArchive() throws IloException {
+        try (InputStream in = Connector.class.getResourceAsStream(WORKER)) {
+            if (in == null)
+                throw new IloException("Cannot find " + WORKER + " in the class path");
+            File archive = File.createTempFile("worker", ".zip");
+            try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive))) {
+                zip.putNextEntry(new ZipEntry("main.py"));
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1)
+                    zip.write(buffer, 0, read);
+                zip.closeEntry();
+            }
+            return archive;
+        } catch (IOException e) {
+            throw new IloException("Cannot build the worker archive: " + e.getMessage());
+        }
+    }
+
+    // Smallest models the engines can solve, used to start a runtime.
+    private static final String PREWARM_LP = "Minimize\n obj: x\nSubject To\n c1: x >= 0\nEnd\n";
+    private static final String PREWARM_CPO = "x = intVar(0..1);\nminimize(x);\n";
+
+    @Override
+    public String prewarm(Runtime runtime, TShirtSize size, int nodes, boolean isCplex) throws IloException {
+        initToken();
+        String name = com.ibm.ml.ilog.Connector.getDeploymentName(runtime, size, nodes, isCplex);
+        logger.info("Prewarming " + name);
+        long t1 = new Date().getTime();
+        String deployment_id = getOrMakeDeployment(name, isCplex, runtime, size, nodes);
+        if (prewarmJob) {
+            JSONArray input_data = new JSONArray();
+            if (isCplex)
+                input_data.add(createDataFromString("prewarm.lp", PREWARM_LP));
+            else
+                input_data.add(createDataFromString("prewarm.cpo", PREWARM_CPO));
+            Job job = createAndRunJob(deployment_id, input_data, null, null, null, null);
+            deleteJob(job.getId());
+        }
+        long t2 = new Date().getTime();
+        logger.info("Prewarming " + name + " took " + (t2 - t1) / 1000 + " seconds.");
+        return deployment_id;
+    }
+
+    private class Prewarm implements Callable<String> {
+        private final Runtime runtime;
+        private final TShirtSize size;
+        private final int nodes;
+        private final boolean isCplex;
+
+        Prewarm(Config deployment) {
+            runtime = Runtime.valueOf(deployment.getString("runtime"));
+            size = TShirtSize.valueOf(deployment.getString("size"));
+            nodes = deployment.getInt("nodes");
+            isCplex = !deployment.getString("engine").equalsIgnoreCase("cpo");
+        }
+
+        @Override
+        public String call() throws IloException {
+            return prewarm(runtime, size, nodes, isCplex);
+        }
+    }
+
+    @Override
+    public List<String> prewarm() throws IloException {
+        List<String> ids = new ArrayList<>();
+        List<? extends Config> deployments = config.getConfigList("wmlconnector.v4.prewarm.deployments");
+        if (deployments.isEmpty())
+            return ids;
+        initToken();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(deployments.size(), 8), new DaemonThreadFactory("wml-prewarm"));
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (Config deployment : deployments)
+                futures.add(executor.submit(new Prewarm(deployment)));
+            for (Future<String> future : futures)
+                ids.add(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IloException("Prewarming interrupted");
+        } catch (ExecutionException e) {
+            throw new IloException("Prewarming failed: " + e.getCause().getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+        return ids;
+    }
+
 
     @Override
     public JSONObject getSoftwareSpecifications() throws IloException {
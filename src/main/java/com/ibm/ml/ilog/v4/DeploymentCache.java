@@ -0,0 +1,73 @@
+package com.ibm.ml.ilog.v4;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Process wide cache of the deployment ids, keyed by host, space and deployment name.
+The lock of a key is held while the deployment is looked up or created so that concurrent solves
+share the same request and never create the same deployment twice.
+ */
+class DeploymentCache {
+    private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private static final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    private DeploymentCache() {
+    }
+
+    private static class Entry {
+        final String id;
+        final long expiry;
+
+        Entry(String id, long expiry) {
+            this.id = id;
+            this.expiry = expiry;
+        }
+    }
+
+    static String getKey(String host, String space_id, String name) {
+        return host + "/" + space_id + "/" + name;
+    }
+
+    static Object getLock(String key) {
+        Object lock = locks.get(key);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = locks.putIfAbsent(key, newLock);
+            if (lock == null)
+                lock = newLock;
+        }
+        return lock;
+    }
+
+    /* The cached id, null if unknown or expired. */
+    static String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null)
+            return null;
+        if (entry.expiry < System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.id;
+    }
+
+    static void put(String key, String id, long ttl) {
+        if (ttl > 0)
+            entries.put(key, new Entry(id, System.currentTimeMillis() + ttl));
+    }
+
+    /* Forgets a deployment, for example when it has been deleted. */
+    static void invalidate(String id) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().id.equals(id))
+                it.remove();
+        }
+    }
+
+    static void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,157 @@
+package com.ibm.ml.ilog.v4;
+
+import com.ibm.json.java.JSONArray;
+import com.ibm.json.java.JSONObject;
+import com.ibm.ml.ilog.Progress;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+/*
+The progress of a job, refilled from its solve state at each status check: nothing is allocated once the
+KPI lists have reached their size.
+ */
+final class JobProgress implements Progress {
+    private static final String KPI_PREFIX = "KPI.";
+    private static final String CURRENT_OBJECTIVE = "PROGRESS_CURRENT_OBJECTIVE";
+    private static final String BEST_OBJECTIVE = "PROGRESS_BEST_OBJECTIVE";
+    private static final String GAP = "PROGRESS_GAP";
+
+    private final String jobId;
+    private final long start = new Date().getTime();
+    private String state = null;
+    private long elapsed = 0;
+    private double objective = Double.NaN;
+    private double bestBound = Double.NaN;
+    private double gap = Double.NaN;
+    private double lastObjective = Double.NaN;
+    private long improved = -1;
+    private final ArrayList<String> kpiNames = new ArrayList<>();
+    private final ArrayList<Object> kpiValues = new ArrayList<>();
+    private JSONArray log = null;
+    private volatile boolean aborted = false;
+
+    JobProgress(String jobId) {
+        this.jobId = jobId;
+    }
+
+    /*
+    Refills the progress, details and log are null when the job has no solve state yet.
+     */
+    void update(String state, JSONObject details, JSONArray log) {
+        this.state = state;
+        this.log = log;
+        elapsed = new Date().getTime() - start;
+        objective = Double.NaN;
+        bestBound = Double.NaN;
+        gap = Double.NaN;
+        kpiNames.clear();
+        kpiValues.clear();
+        if (details == null)
+            return;
+        objective = toDouble(details.get(CURRENT_OBJECTIVE));
+        bestBound = toDouble(details.get(BEST_OBJECTIVE));
+        gap = toDouble(details.get(GAP));
+        if (Double.isNaN(gap) && !Double.isNaN(objective) && !Double.isNaN(bestBound))
+            gap = Math.abs(objective - bestBound) / (1e-10 + Math.abs(objective));
+        if (!Double.isNaN(objective) && Double.compare(objective, lastObjective) != 0) {
+            lastObjective = objective;
+            improved = elapsed;
+        }
+        for (Object o : details.keySet()) {
+            String key = (String) o;
+            if (key.startsWith(KPI_PREFIX)) {
+                kpiNames.add(key.substring(KPI_PREFIX.length()));
+                kpiValues.add(details.get(key));
+            }
+        }
+    }
+
+    private static double toDouble(Object value) {
+        if (value == null)
+            return Double.NaN;
+        if (value instanceof Number)
+            return ((Number) value).doubleValue();
+        try {
+            return Double.parseDouble(value.toString());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    @Override
+    public String getJobId() {
+        return jobId;
+    }
+
+    @Override
+    public String getState() {
+        return state;
+    }
+
+    @Override
+    public long getElapsedTime() {
+        return elapsed;
+    }
+
+    @Override
+    public double getObjective() {
+        return objective;
+    }
+
+    @Override
+    public double getBestBound() {
+        return bestBound;
+    }
+
+    @Override
+    public double getGap() {
+        return gap;
+    }
+
+    @Override
+    public long getTimeSinceImprovement() {
+        return improved < 0 ? -1 : elapsed - improved;
+    }
+
+    @Override
+    public int getNumKPIs() {
+        return kpiNames.size();
+    }
+
+    @Override
+    public String getKPIName(int i) {
+        return kpiNames.get(i);
+    }
+
+    @Override
+    public Object getKPIValue(int i) {
+        return kpiValues.get(i);
+    }
+
+    @Override
+    public double getKPI(String name) {
+        int i = kpiNames.indexOf(name);
+        return i < 0 ? Double.NaN : toDouble(kpiValues.get(i));
+    }
+
+    @Override
+    public int getNumLogLines() {
+        return log == null ? 0 : log.size();
+    }
+
+    @Override
+    public String getLogLine(int i) {
+        return String.valueOf(log.get(i));
+    }
+
+    @Override
+    public void abort() {
+        aborted = true;
+    }
+
+    @Override
+    public boolean isAborted() {
+        return aborted;
+    }
+}
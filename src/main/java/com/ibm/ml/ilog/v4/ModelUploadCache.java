@@ -0,0 +1,149 @@
+package com.ibm.ml.ilog.v4;
+
+import com.ibm.json.java.JSONObject;
+import com.ibm.ml.ilog.Credentials;
+import ilog.concert.IloException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Content addressed store of the exported models in COS.
+A model is uploaded under a name built from its SHA-256, the following solves of the same model, in this process or
+another one, only send a data reference to it. COS is the index: each reference first checks that the object is
+still in the bucket, and uploads it again if it was removed. The models exported in memory are hashed while being
+written, the model files are hashed when they are referenced.
+ */
+class ModelUploadCache {
+    private static final Logger logger = LogManager.getLogger();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // One lock per COS object, so that concurrent solves of the same model upload it once.
+    private static final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    private final COSConnector cos;
+    private final String location;
+
+    private ModelUploadCache(Credentials creds) throws IloException {
+        cos = new COSConnector(creds);
+        location = creds.get(Credentials.COS_ENDPOINT) + "/" + creds.get(Credentials.COS_BUCKET);
+    }
+
+    /*
+    Returns null if the credentials do not contain the COS configuration.
+     */
+    static ModelUploadCache create(Credentials creds) throws IloException {
+        for (String k : Credentials.COSFields) {
+            if (!creds.containsKey(k)) {
+                logger.warn("The model cache needs the COS configuration, missing " + k + ": models will be sent inline.");
+                return null;
+            }
+        }
+        ModelUploadCache ret = new ModelUploadCache(creds);
+        ret.cos.initToken();
+        return ret;
+    }
+
+    /*
+    Returns a data reference with the given id to the content of the file, uploading it only if this content
+    is not in the bucket.
+     */
+    JSONObject getReference(String id, final String filePath) throws IloException {
+        return getReference(id, filePath, hash(filePath), new Upload() {
+            @Override
+            public void to(String fileName) throws IloException {
+                cos.putFile(fileName, filePath);
+            }
+        });
+    }
+
+    /*
+    The same for the first length bytes of content, uploaded from memory. digest is the SHA-256 computed while
+    exporting, null to compute it.
+     */
+    JSONObject getReference(String id, final byte[] content, final int length, byte[] digest) throws IloException {
+        return getReference(id, id, digest != null ? toHex(digest) : hash(content, length), new Upload() {
+            @Override
+            public void to(String fileName) throws IloException {
+                cos.putBytes(fileName, content, length);
+            }
+        });
+    }
+
+    private interface Upload {
+        void to(String fileName) throws IloException;
+    }
+
+    private JSONObject getReference(String id, String model, String hash, Upload upload) throws IloException {
+        long t1 = new Date().getTime();
+        String fileName = "model-" + hash + getExtension(id);
+        String key = location + "/" + fileName;
+        synchronized (getLock(key)) {
+            if (cos.exists(fileName))
+                logger.info("Model " + model + " is already uploaded as " + fileName);
+            else
+                upload.to(fileName);
+        }
+        JSONObject ret = cos.getDataReferences(fileName);
+        // The engine sees the reference under the name it expects for the model.
+        ret.put("id", id);
+        long t2 = new Date().getTime();
+        logger.info("Referencing the model took " + (t2 - t1) / 1000 + " seconds");
+        return ret;
+    }
+
+    private static Object getLock(String key) {
+        Object lock = new Object();
+        Object previous = locks.putIfAbsent(key, lock);
+        return previous != null ? previous : lock;
+    }
+
+    void end() {
+        cos.end();
+    }
+
+    private static String getExtension(String id) {
+        int dot = id.indexOf('.');
+        return dot < 0 ? "" : id.substring(dot);
+    }
+
+    private static String hash(String filePath) throws IloException {
+        try (InputStream in = Files.newInputStream(Paths.get(filePath))) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length;
+            while ((length = in.read(buffer)) != -1)
+                digest.update(buffer, 0, length);
+            return toHex(digest.digest());
+        } catch (IOException e) {
+            throw new IloException("Cannot hash " + filePath + ": " + e.getMessage());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IloException(e.getMessage());
+        }
+    }
+
+    private static String hash(byte[] content, int length) throws IloException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content, 0, length);
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IloException(e.getMessage());
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        StringBuilder ret = new StringBuilder();
+        for (byte b : digest)
+            ret.append(String.format("%02x", b));
+        return ret.toString();
+    }
+}
@@ -0,0 +1,63 @@
+package com.ibm.ml.ilog.v4;
+
+import com.ibm.json.java.JSONArray;
+import com.ibm.ml.ilog.Connector.Runtime;
+import com.ibm.ml.ilog.Connector.TShirtSize;
+import com.ibm.ml.ilog.Job;
+import ilog.concert.IloException;
+import org.apache.http.HttpEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/*
+The other deployments a model is raced against, with the deadline of the race.
+ */
+public class Racing {
+    private final List<Runtime> runtimes = new ArrayList<>();
+    private final List<TShirtSize> sizes = new ArrayList<>();
+    private final List<Integer> nodes = new ArrayList<>();
+    private long deadline = 0;
+
+    public void add(Runtime runtime, TShirtSize size, int numNodes) {
+        runtimes.add(runtime);
+        sizes.add(size);
+        nodes.add(numNodes);
+    }
+
+    public boolean isEmpty() {
+        return runtimes.isEmpty();
+    }
+
+    /*
+    Msec to wait for better solutions once a first job is over with a solution, 0 to keep that first job.
+    Only used when the objective sense of the model is known.
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /*
+    Races the model on the deployment of the connector and on the other deployments.
+    Once aborted is true, all the jobs of the race are cancelled.
+     */
+    public Job run(Connector connector, String deployment_id, boolean isCplex, String sav, String savFileName,
+                   JSONArray input_data, Map<String, String> overriden_solve_parameters, Boolean minimize,
+                   BooleanSupplier aborted) throws IloException {
+        List<String> deployment_ids = new ArrayList<>();
+        deployment_ids.add(deployment_id);
+        for (int i = 0; i < runtimes.size(); i++) {
+            String id = connector.getOrMakeDeployment(runtimes.get(i), sizes.get(i), nodes.get(i), isCplex);
+            if (!deployment_ids.contains(id))
+                deployment_ids.add(id);
+        }
+        List<HttpEntity> payloads = connector.buildPayloads(deployment_ids, sav, savFileName, input_data, overriden_solve_parameters);
+        return connector.race(deployment_ids, payloads, deadline, minimize, aborted);
+    }
+}
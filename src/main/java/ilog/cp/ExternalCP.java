@@ -17,9 +17,14 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 import com.ibm.json.java.JSONArray;
 import com.ibm.json.java.JSONObject;
+import com.ibm.ml.ilog.utils.LinkedFuture;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import ilog.concert.IloAddable;
@@ -458,6 +463,30 @@ public abstract class ExternalCP extends NotSupportedCP {
 
         // Now perform the solve
         String solveStatus = externalSolve();
+        return readSolution(variableMaps, solveStatus);
+    }
+
+    /**
+     * Starts a solve without waiting for its end: the future completes with what {@link #solve()} returns once the
+     * solution is read, which is done on the executor. The model must not be changed or solved before.
+     * Cancelling the future cancels the solve, a WML job is deleted.
+     */
+    public CompletableFuture<Boolean> submit(Executor executor) throws IloException {
+        final VariablesMaps variableMaps = buildVariableMaps();
+        CompletableFuture<String> submitted = externalSubmit(executor);
+        return LinkedFuture.of(submitted, submitted.thenApplyAsync(new Function<String, Boolean>() {
+            @Override
+            public Boolean apply(String solveStatus) {
+                try {
+                    return readSolution(variableMaps, solveStatus);
+                } catch (IloException e) {
+                    throw new CompletionException(e);
+                }
+            }
+        }, executor));
+    }
+
+    private boolean readSolution(VariablesMaps variableMaps, String solveStatus) throws IloException {
         logger.info("SolveStatus = " + solveStatus);
 
         result = null;
@@ -468,6 +497,8 @@ public abstract class ExternalCP extends NotSupportedCP {
             // We have a feasible solution. Parse the solution file
             result = getSolution();
             status = result.getSolutionStatus();
+            if (status == null)
+                status = Status.Unknown;
 
             // Transfer non-zeros indexed by name to non-zeros indexed by object.
             for (final Map.Entry<String, Double> e : result.name2val.entrySet()) {
@@ -580,10 +611,23 @@ public abstract class ExternalCP extends NotSupportedCP {
      */
     protected abstract String externalSolve() throws IloException;
 
+    /**
+     * Starts an external solve, the future completes with its solve status once getSolution can be called.
+     * The default solves and returns a completed future.
+     */
+    protected CompletableFuture<String> externalSubmit(Executor executor) throws IloException {
+        return CompletableFuture.completedFuture(externalSolve());
+    }
+
     protected abstract String externalRefineConflict() throws IloException;
 
     protected abstract Solution getSolution() throws IloException;
 
+    /**
+     * Stops the external solve in progress, if any. The solve returns the incumbent if there is one.
+     */
+    public abstract void abort() throws IloException;
+
     // Below we overwrite a bunch of IloCP functions that query solutions.
     // Add your own overwrites if you need more.
 
@@ -12,19 +12,31 @@
  */
 package ilog.cp;
 
-import java.io.File;
 import java.io.IOException;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
 import com.ibm.json.java.JSONArray;
 import com.ibm.json.java.JSON;
 import com.ibm.json.java.JSONObject;
 import com.ibm.ml.ilog.Connector;
+import org.apache.http.HttpEntity;
+import com.ibm.ml.ilog.utils.ExportSink;
 import com.ibm.ml.ilog.utils.HttpUtils;
+import com.ibm.ml.ilog.utils.LinkedFuture;
+import com.ibm.ml.ilog.utils.Pipeline;
+import com.ibm.ml.ilog.v4.Racing;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import com.ibm.ml.ilog.Credentials;
 import com.ibm.ml.ilog.Job;
+import com.ibm.ml.ilog.ProgressListener;
 import ilog.concert.IloException;
 
 public class WmlCP extends ExternalCP {
@@ -60,12 +72,17 @@ public class WmlCP extends ExternalCP {
 
 	private Job job;
 	private String solution;
+	private final Racing racing = new Racing();
+	private volatile boolean aborted = false;
+	// Set while externalSubmit runs: the job is submitted and left in submitted instead of being waited for.
+	private boolean submitOnly = false;
+	private CompletableFuture<Job> submitted = null;
 
 	public WmlCP(Credentials credentials, Connector.Runtime runtime, Connector.TShirtSize size, int numNodes) throws IloException {
         super();
         logger.info("Starting CPO with "+runtime+"."+size+"."+numNodes);
         wmlConnector = (com.ibm.ml.ilog.v4.Connector) Connector.getConnector(credentials, runtime, size, numNodes, "JSON");
-        wml_name = Connector.getCPOPrefix()+runtime+"."+size+"."+numNodes;
+        wml_name = Connector.getDeploymentName(runtime, size, numNodes, false);
         timeLimit = wmlConnector.config.getInt("wmlconnector.v4.time_limit");
     }
 
@@ -83,40 +100,145 @@ public class WmlCP extends ExternalCP {
         super.end();
     }
 
+    /**
+     * Also solves the model on another deployment at the same time, and keeps the first or the best answer.
+     */
+    public void addRacer(Connector.Runtime runtime, Connector.TShirtSize size, int numNodes) {
+        racing.add(runtime, size, numNodes);
+    }
+
+    /**
+     * Msec to wait for a better objective once a first racer is over with a solution, 0 (the default) to keep
+     * that first answer. The objective sense is read from the exported model, a model without objective keeps
+     * the first answer.
+     */
+    public void setRaceDeadline(long deadline) {
+        racing.setDeadline(deadline);
+    }
+
+    /* True to minimize, false to maximize, null without objective: the sense of the first objective statement of the .cpo. */
+    static Boolean getObjectiveSense(byte[] cpo, int size) {
+        for (int i = 0; i < size; i++) {
+            if (i > 0 && cpo[i - 1] != '\n')
+                continue;
+            if (isStatement(cpo, size, i, "minimize"))
+                return Boolean.TRUE;
+            if (isStatement(cpo, size, i, "maximize"))
+                return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    private static boolean isStatement(byte[] cpo, int size, int start, String keyword) {
+        int end = start + keyword.length();
+        if (end >= size)
+            return false;
+        for (int i = 0; i < keyword.length(); i++) {
+            if (cpo[start + i] != keyword.charAt(i))
+                return false;
+        }
+        // Not an identifier starting with the keyword.
+        return !Character.isJavaIdentifierPart((char) cpo[end]);
+    }
+
+    /**
+     * The listener receives the objective, best bound, gap and engine log tail of the WML job while it runs.
+     */
+    public void addProgressListener(ProgressListener listener) {
+        wmlConnector.addProgressListener(listener);
+    }
+
+    public void removeProgressListener(ProgressListener listener) {
+        wmlConnector.removeProgressListener(listener);
+    }
+
+    /**
+     * Cancels the WML job of the solve in progress, from another thread.
+     * The solve then returns the last solution found by the engine, if any.
+     * An abort outside of a solve is ignored.
+     */
+    @Override
+    public void abort() {
+        logger.info("Aborting the solve");
+        aborted = true;
+    }
+
+    /* True once abort has been called. */
+    private class AbortCheck implements BooleanSupplier {
+        @Override
+        public boolean getAsBoolean() {
+            return aborted;
+        }
+    }
+
+    /* Looks the token and the deployment up, on a pipeline thread. */
+    private class Connect implements Pipeline.Stage<String> {
+        @Override
+        public String run() throws IloException {
+            wmlConnector.initToken();
+            return wmlConnector.getOrMakeDeployment(wml_name, false);
+        }
+    }
+
     protected String externalProcess(String cpoCommand) throws IloException {
     	this.resetStatus();
+		// An abort between two solves does not stop the next one.
+		aborted = false;
 
-    	wmlConnector.initToken();
+		// The token and the deployment are looked up while the model is exported.
+		Pipeline pipeline = new Pipeline("CPO solve");
+		Future<String> deployment = pipeline.async("deployment", new Connect());
 		solution = null;
 		String solveStatus = null;
 
-        if (getParameter(IloCP.DoubleParam.TimeLimit) == getParameterDefault(IloCP.DoubleParam.TimeLimit)){
-            logger.info("Setting the time limit to default WML: " + timeLimit*60 + " seconds");
-            setParameter(IloCP.DoubleParam.TimeLimit, timeLimit*60);
-        }
-        else{
-            logger.info("Time limit has been set by user to " + getParameter(IloCP.DoubleParam.TimeLimit));
-        }
-		try {
-			// Create temporary files for model input and solution output.
-			final File model = File.createTempFile("cpo", ".cpo");
-			exportModel(model.getAbsolutePath());
+		// The model is exported in memory, it is only written to a file if it must be uploaded in COS or raced.
+		try (ExportSink sink = new ExportSink("cpo", wmlConnector.config)) {
+			if (getParameter(IloCP.DoubleParam.TimeLimit) == getParameterDefault(IloCP.DoubleParam.TimeLimit)){
+				logger.info("Setting the time limit to default WML: " + timeLimit*60 + " seconds");
+				setParameter(IloCP.DoubleParam.TimeLimit, timeLimit*60);
+			}
+			else{
+				logger.info("Time limit has been set by user to " + getParameter(IloCP.DoubleParam.TimeLimit));
+			}
+			long t = new Date().getTime();
+			final ExportSink.Buffer model = sink.newBuffer(".cpo");
+			exportModel(model);
+			pipeline.record("export", t);
 
 			logger.info("Exported cpo file.");
 			try {
-				String deployment_id =wmlConnector.getOrMakeDeployment(wml_name, false);
+				String deployment_id = pipeline.join("deployment", deployment);
 				JSONArray input_data = new JSONArray();
 
 				Map<String, String> overriden_solve_parameters = new HashMap<>();
 				if (cpoCommand != null) {
 					overriden_solve_parameters.put(CPO_COMMAND, cpoCommand);
 				}
-				byte[] payload = wmlConnector.buildPayload(deployment_id, wml_name+".cpo", model.getAbsolutePath(), input_data, overriden_solve_parameters);
-
-				job = wmlConnector.createAndRunEngineJob(deployment_id, payload);
+				if (aborted) {
+					logger.info("The solve is aborted, the model is not sent.");
+					return "Unknown";
+				}
+				if (racing.isEmpty()) {
+					t = new Date().getTime();
+					HttpEntity payload = wmlConnector.buildPayload(deployment_id, wml_name+".cpo", model, input_data, overriden_solve_parameters);
+					pipeline.record("payload", t);
+					pipeline.log();
+					if (submitOnly) {
+						submitted = wmlConnector.submitEngineJobAsync(deployment_id, payload);
+						return null;
+					}
+					job = wmlConnector.createAndRunEngineJob(deployment_id, payload, new AbortCheck());
+				} else {
+					pipeline.log();
+					Boolean minimize = racing.getDeadline() > 0 ? getObjectiveSense(model.getBytes(), model.size()) : null;
+					job = racing.run(wmlConnector, deployment_id, false, wml_name+".cpo", model.getFile().getAbsolutePath(), input_data, overriden_solve_parameters, minimize, new AbortCheck());
+				}
 				if (job.hasSolveState()) {
 	        		solveStatus = job.getSolveStatus();
 	        		logger.info("SolveStatus = " + solveStatus);
+				} else if (aborted) {
+					logger.info("The solve was aborted before a solution was found.");
+					return "Unknown";
 				} else {
 					throw new IloException(job.getJobStatus().toString());
 				}
@@ -125,15 +247,62 @@ public class WmlCP extends ExternalCP {
         		return solveStatus;
 				
 			} finally {
-				model.delete();
+				aborted = false;
 				if (job != null) {
 					wmlConnector.deleteJob(job.getId());
 					job = null;
 				}
-				wmlConnector.close();
 			}
 		} catch (Exception e) {
 			throw new IloException(e.getMessage());
+		} finally {
+			// Also when the export fails: the lookup must not outlive the connector.
+			pipeline.settle(deployment);
+			// A submitted job still needs the connector, it is released once the job is over.
+			if (submitted == null)
+				wmlConnector.close();
+		}
+    }
+
+    /**
+     * The job is submitted and tracked with the other asynchronous jobs, no thread waits for it.
+     * A raced or aborted solve is over before returning. Cancelling the future deletes the job.
+     */
+    @Override
+    protected CompletableFuture<String> externalSubmit(Executor executor) throws IloException {
+		submitOnly = true;
+		try {
+			String solveStatus = externalProcess(CPO_COMMAND_SOLVE);
+			if (submitted == null)
+				return CompletableFuture.completedFuture(solveStatus);
+			return LinkedFuture.of(submitted, submitted.handleAsync(new Completion(), executor));
+		} finally {
+			submitOnly = false;
+			submitted = null;
+		}
+    }
+
+    /* Keeps the solution of a submitted job, then deletes the job and releases the connector. */
+    private class Completion implements BiFunction<Job, Throwable, String> {
+		@Override
+		public String apply(Job job, Throwable error) {
+			try {
+				if (error != null)
+					throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+				try {
+					if (!job.hasSolveState())
+						throw new IloException(job.getJobStatus().toString());
+					logger.info("SolveStatus = " + job.getSolveStatus());
+					solution = job.getSolution();
+					return job.getSolveStatus();
+				} finally {
+					wmlConnector.deleteJob(job.getId());
+				}
+			} catch (IloException e) {
+				throw new CompletionException(e);
+			} finally {
+				wmlConnector.close();
+			}
 		}
     }
     
@@ -0,0 +1,178 @@
+package ilog.cplex;
+
+import ilog.concert.*;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+Bounds and objective of the model at the last full export.
+The changes made since then are found by comparing the model with this base, and written as a small text file,
+one change per line:
+    LB|UB <variable> <value>
+    RLB|RUB <range> <value>
+    OBJ <variable> <coefficient>
+    OBJCONST <value>
+The range bounds are written as exported, with the constant of the expression moved to the bounds. The worker
+deployment (src/main/resources/worker/main.py) applies them to the base model, see the format in CPLEX.md.
+Structural changes cannot be described this way: the model must be exported again. They are found with the
+structure version of the model, changed when an object (variable, range, matrix, conversion...) is added or removed,
+and with a hash of the linear expression of each range, which sees the coefficient changes, including the ones made
+in a matrix. A non linear range or objective, or a new objective sense, also needs a full export.
+ */
+final class ChangeJournal {
+    private double[] lbs = null;
+    private double[] ubs = null;
+    private double[] rlbs = null;
+    private double[] rubs = null;
+    private long[] rowHashes = null;
+    private double[] objCoefs = null;
+    private double objConstant;
+    private IloObjectiveSense objSense = null;
+    // The structure version of the model at the base.
+    private long structure;
+
+    boolean hasBase() {
+        return lbs != null;
+    }
+
+    void clear() {
+        lbs = null;
+        ubs = null;
+        rlbs = null;
+        rubs = null;
+        rowHashes = null;
+        objCoefs = null;
+        objSense = null;
+    }
+
+    /*
+    Records the model as exported.
+     */
+    void setBase(OrdinalRegistry<IloNumVar> variables, OrdinalRegistry<IloRange> ranges, long structure, IloObjective objective) throws IloException {
+        clear();
+        int n = variables.size();
+        double[] coefs = getObjCoefs(variables, objective);
+        if (coefs == null)
+            return;
+        int m = ranges.size();
+        long[] hashes = new long[m];
+        for (int i = 0; i < m; i++) {
+            if (!hashRow(variables, ranges.get(i), hashes, i))
+                return;
+        }
+        lbs = new double[n];
+        ubs = new double[n];
+        for (int i = 0; i < n; i++) {
+            IloNumVar v = variables.get(i);
+            lbs[i] = v.getLB();
+            ubs[i] = v.getUB();
+        }
+        rlbs = new double[m];
+        rubs = new double[m];
+        for (int i = 0; i < m; i++) {
+            IloRange r = ranges.get(i);
+            rlbs[i] = r.getLB();
+            rubs[i] = r.getUB();
+        }
+        rowHashes = hashes;
+        objCoefs = coefs;
+        objConstant = getObjConstant(objective);
+        objSense = objective == null ? null : objective.getSense();
+        this.structure = structure;
+    }
+
+    /*
+    The changes since the base, null if the model must be exported again.
+     */
+    byte[] getChanges(OrdinalRegistry<IloNumVar> variables, OrdinalRegistry<IloRange> ranges, long structure, IloObjective objective) throws IloException {
+        if (!hasBase() || variables.size() != lbs.length || ranges.size() != rlbs.length || structure != this.structure)
+            return null;
+        IloObjectiveSense sense = objective == null ? null : objective.getSense();
+        if (sense != objSense)
+            return null;
+        double[] coefs = getObjCoefs(variables, objective);
+        if (coefs == null)
+            return null;
+        long[] hashes = new long[rlbs.length];
+        for (int i = 0; i < rlbs.length; i++) {
+            if (!hashRow(variables, ranges.get(i), hashes, i) || hashes[i] != rowHashes[i])
+                return null;
+        }
+
+        StringBuilder changes = new StringBuilder();
+        for (int i = 0; i < lbs.length; i++) {
+            IloNumVar v = variables.get(i);
+            append(changes, "LB", variables.getName(i), lbs[i], v.getLB());
+            append(changes, "UB", variables.getName(i), ubs[i], v.getUB());
+            append(changes, "OBJ", variables.getName(i), objCoefs[i], coefs[i]);
+        }
+        for (int i = 0; i < rlbs.length; i++) {
+            IloRange r = ranges.get(i);
+            // Unchanged since the base, as its hash.
+            double constant = ((IloLinearNumExpr) r.getExpr()).getConstant();
+            append(changes, "RLB", ranges.getName(i), rlbs[i] - constant, r.getLB() - constant);
+            append(changes, "RUB", ranges.getName(i), rubs[i] - constant, r.getUB() - constant);
+        }
+        double constant = getObjConstant(objective);
+        if (Double.compare(constant, objConstant) != 0)
+            changes.append("OBJCONST ").append(constant).append('\n');
+        return changes.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void append(StringBuilder changes, String kind, String name, double base, double value) {
+        if (Double.compare(base, value) != 0)
+            changes.append(kind).append(' ').append(name).append(' ').append(value).append('\n');
+    }
+
+    /*
+    Stores in hashes[i] a hash of the linear expression of the range: its constant and its terms, by variable ordinal.
+    False if the expression is not linear or uses a variable which is not registered.
+     */
+    private static boolean hashRow(OrdinalRegistry<IloNumVar> variables, IloRange range, long[] hashes, int i) throws IloException {
+        IloNumExpr expr = range.getExpr();
+        if (!isLinear(expr))
+            return false;
+        IloLinearNumExpr linear = (IloLinearNumExpr) expr;
+        long hash = Double.doubleToLongBits(linear.getConstant());
+        IloLinearNumExprIterator it = linear.linearIterator();
+        while (it.hasNext()) {
+            int ordinal = variables.getOrdinal(it.nextNumVar());
+            if (ordinal < 0)
+                return false;
+            hash = 31 * (31 * hash + ordinal) + Double.doubleToLongBits(it.getValue());
+        }
+        hashes[i] = hash;
+        return true;
+    }
+
+    private static boolean isLinear(IloNumExpr expr) throws IloException {
+        if (expr instanceof IloLQNumExpr)
+            return !((IloLQNumExpr) expr).quadIterator().hasNext();
+        return expr instanceof IloLinearNumExpr;
+    }
+
+    /* The objective coefficients by variable ordinal, null if the objective is not linear. */
+    private static double[] getObjCoefs(OrdinalRegistry<IloNumVar> variables, IloObjective objective) throws IloException {
+        double[] coefs = new double[variables.size()];
+        if (objective == null)
+            return coefs;
+        IloNumExpr expr = objective.getExpr();
+        if (!isLinear(expr))
+            return null;
+        IloLinearNumExprIterator it = ((IloLinearNumExpr) expr).linearIterator();
+        while (it.hasNext()) {
+            int ordinal = variables.getOrdinal(it.nextNumVar());
+            if (ordinal < 0)
+                return null;
+            coefs[ordinal] += it.getValue();
+        }
+        return coefs;
+    }
+
+    private static double getObjConstant(IloObjective objective) throws IloException {
+        if (objective == null)
+            return 0.0;
+        IloNumExpr expr = objective.getExpr();
+        return expr instanceof IloLinearNumExpr ? ((IloLinearNumExpr) expr).getConstant() : 0.0;
+    }
+}
@@ -14,11 +14,15 @@ package ilog.cplex;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import ilog.concert.*;
+import com.ibm.ml.ilog.utils.LinkedFuture;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -28,39 +32,173 @@ abstract class ExternalCplex extends NotSupportedCplex {
 
     private static final long serialVersionUID = 1;
 
-    private final java.util.LinkedList<IloNumVar> _variables = new java.util.LinkedList<>();
+    private final OrdinalRegistry<IloNumVar> _variables = new OrdinalRegistry<>("vv");
+    private final OrdinalRegistry<IloRange> _ranges = new OrdinalRegistry<>("cc");
+    private final ChangeJournal _journal = new ChangeJournal();
+    // Changed each time an object is added to or removed from the model, so that the delta solves see structure changes.
+    private long _structure = 0;
+    // The matrices of the model and the number of their rows already registered: rows are added to them directly.
+    private final List<IloLPMatrix> _matrices = new ArrayList<>();
+    private final List<Integer> _matrixRows = new ArrayList<>();
+    // An object of the model which cannot be exported, reported at the next solve.
+    private IloAddable _unsupported = null;
 
     @Override
     public void end(){
         _variables.clear();
+        _ranges.clear();
+        _journal.clear();
+        _matrices.clear();
+        _matrixRows.clear();
+        _unsupported = null;
         super.end();
     }
 
-    public ExternalCplex() throws IloException {
-        super();
+    /*
+    The objects are registered when they are added to the model, so that removing them is seen too.
+    The add methods of the modeler (addLe, addRange, addLPMatrix...) go through add, the solves also walk the model
+    to register the objects added another way.
+     */
+    @Override
+    public IloAddable add(IloAddable object) throws IloException {
+        IloAddable ret = super.add(object);
+        register(object);
+        return ret;
+    }
+
+    @Override
+    public IloAddable[] add(IloAddable[] objects) throws IloException {
+        IloAddable[] ret = super.add(objects);
+        for (IloAddable o : objects)
+            register(o);
+        return ret;
+    }
+
+    @Override
+    public IloAddable[] add(IloAddable[] objects, int start, int num) throws IloException {
+        IloAddable[] ret = super.add(objects, start, num);
+        for (int i = start; i < start + num; i++)
+            register(objects[i]);
+        return ret;
+    }
+
+    @Override
+    public IloAddable remove(IloAddable object) throws IloException {
+        unregister(object);
+        return super.remove(object);
+    }
+
+    @Override
+    public IloAddable[] remove(IloAddable[] objects) throws IloException {
+        for (IloAddable o : objects)
+            unregister(o);
+        return super.remove(objects);
+    }
+
+    @Override
+    public IloAddable[] remove(IloAddable[] objects, int start, int num) throws IloException {
+        for (int i = start; i < start + num; i++)
+            unregister(objects[i]);
+        return super.remove(objects, start, num);
+    }
+
+    @Override
+    public void delete(IloCopyable object) throws IloException {
+        if (object instanceof IloAddable)
+            unregister((IloAddable) object);
+        super.delete(object);
+    }
+
+    @Override
+    public void delete(IloCopyable[] objects) throws IloException {
+        for (IloCopyable o : objects) {
+            if (o instanceof IloAddable)
+                unregister((IloAddable) o);
+        }
+        super.delete(objects);
+    }
+
+    @Override
+    public void delete(IloCopyable[] objects, int start, int num) throws IloException {
+        for (int i = start; i < start + num; i++) {
+            if (objects[i] instanceof IloAddable)
+                unregister((IloAddable) objects[i]);
+        }
+        super.delete(objects, start, num);
+    }
+
+    @Override
+    public void clearModel() throws IloException {
+        super.clearModel();
+        _structure++;
+        _matrices.clear();
+        _matrixRows.clear();
+        _unsupported = null;
     }
 
-    private void addVariable(HashMap<String, IloNumVar> name2var, HashMap<IloNumVar, String> oldNames, IloNumVar v) throws IloException {
-        String name = v.getName();
+    private void register(IloAddable o) throws IloException {
+        _structure++;
+        if (o instanceof IloLPMatrix) {
+            if (!_matrices.contains(o)) {
+                _matrices.add((IloLPMatrix) o);
+                _matrixRows.add(0);
+            }
+        } else if (o instanceof IloRange) {
+            _ranges.add((IloRange) o);
+        } else if (o instanceof IloNumVar) {
+            _variables.add((IloNumVar) o);
+        } else if (o instanceof IloObjective || o instanceof IloConversion) {
+            // Nothing to name.
+        } else if (_unsupported == null)
+            _unsupported = o;
+    }
 
-        if (!oldNames.containsKey(v)) {
-            oldNames.put(v, name); // even if name == null!
-            name = String.format("vv%x", oldNames.size());
-            v.setName(name);
-            name2var.put(name, v);
+    private boolean isRegistered(Object o) {
+        if (o instanceof IloLPMatrix)
+            return _matrices.contains(o);
+        if (o instanceof IloRange)
+            return _ranges.getOrdinal((IloRange) o) >= 0;
+        if (o instanceof IloNumVar)
+            return _variables.getOrdinal((IloNumVar) o) >= 0;
+        return o instanceof IloObjective || o instanceof IloConversion;
+    }
+
+    /* The registries keep the removed objects: they are not in the next exports, so they have no solution value. */
+    private void unregister(IloAddable o) {
+        _structure++;
+        int matrix = _matrices.indexOf(o);
+        if (matrix >= 0) {
+            _matrices.remove(matrix);
+            _matrixRows.remove(matrix);
         }
+        if (o == _unsupported)
+            _unsupported = null;
     }
 
-    private void addRange(HashMap<String, IloRange> name2rng, HashMap<IloRange, String> oldNames, IloRange v) throws IloException {
-        String name = v.getName();
-        if (!oldNames.containsKey(v)) {
-            oldNames.put(v, name); // even if name == null!
-            name = String.format("cc%x", oldNames.size());
-            v.setName(name);
-            name2rng.put(name, v);
+    /*
+    Registers the rows added to the matrices since the last solve. All the rows of a matrix are checked again only
+    when rows were removed from it.
+     */
+    private void registerMatrixRows() throws IloException {
+        for (int k = 0; k < _matrices.size(); k++) {
+            IloLPMatrix matrix = _matrices.get(k);
+            int known = _matrixRows.get(k);
+            int n = matrix.getNrows();
+            int from = known;
+            if (n < known || (n > 0 && n == known && _ranges.getOrdinal(matrix.getRange(n - 1)) < 0))
+                from = 0;
+            if (n != known || from != known)
+                _structure++;
+            for (int i = from; i < n; i++)
+                _ranges.add(matrix.getRange(i));
+            _matrixRows.set(k, n);
         }
     }
 
+    public ExternalCplex() throws IloException {
+        super();
+    }
+
     /**
      * Solution information.
      * Instances of this class contain solution information that can be obtained from a CPLEX <code>.sol</code> file.
@@ -72,31 +210,28 @@ abstract class ExternalCplex extends NotSupportedCplex {
 
         boolean feasible = false;
         /**
-         * Map variable names to values.
+         * Number of variables and ranges known to the solver: the variable named <code>vv%x</code> is at index x-1
+         * in the arrays below, the range named <code>cc%x</code> at index x-1.
          */
-        public HashMap<String, Double> name2val = new HashMap<>();
-        public HashMap<String, Double> name2ReducedCost = new HashMap<>();
+        final int numVars;
+        final int numRanges;
         /**
-         * Map variable objects to values.
+         * Values and reduced costs of the variables, NaN if not in the solution.
          */
-        public HashMap<IloNumVar, Double> var2val = new HashMap<>();
-        public HashMap<IloNumVar, Double> var2ReducedCost = new HashMap<>();
+        double[] values;
+        double[] reducedCosts;
         /**
-         * Map range names to values.
+         * Duals and slacks of the ranges, 0 if not in the solution.
          */
-        public HashMap<String, Double> name2dual = new HashMap<>();
+        double[] duals;
+        double[] slacks;
         /**
-         * Map range objects to values.
+         * Solution pool, when the <code>.sol</code> file holds several solutions: the values of the k-th solution
+         * of the pool are in poolValues[k], indexed as values.
          */
-        public HashMap<IloRange, Double> rng2dual = new HashMap<>();
-        /**
-         * Map range names to values.
-         */
-        public HashMap<String, Double> name2slack = new HashMap<>();
-        /**
-         * Map range objects to values.
-         */
-        public HashMap<IloRange, Double> rng2slack = new HashMap<>();
+        double[][] poolValues = null;
+        double[] poolObjectives = null;
+        int poolSize = 0;
         /**
          * Objective value of solution.
          */
@@ -113,20 +248,79 @@ abstract class ExternalCplex extends NotSupportedCplex {
          * Dual feasible?
          */
         public boolean dfeas = false;
+        /**
+         * Nodes, iterations, bound and gap of the solve, and times of the job.
+         */
+        SolveStatistics statistics = new SolveStatistics();
 
         public Solution(int status) {
+            this(status, 0, 0);
+        }
+
+        private Solution(int status, int numVars, int numRanges) {
             this.status = status;
+            this.numVars = numVars;
+            this.numRanges = numRanges;
+        }
+
+        public Solution(File solutionXml, int numVars, int numRanges) throws IloException, IOException {
+            this(-1, numVars, numRanges);
+            parse(solutionXml);
         }
 
-        public Solution(File solutionXml, Set<String> knownVariables, Set<String> knownConstraints) throws IloException, IOException {
-            this(-1);
-            parse(solutionXml, knownVariables, knownConstraints);
+        /**
+         * Parse a CPLEX <code>.sol</code> stream, such as the decoded output of a job.
+         * See {@link #parse(InputStream, boolean)} for details.
+         */
+        public Solution(InputStream solutionXml, int numVars, int numRanges, boolean keepText) throws IloException, IOException {
+            this(-1, numVars, numRanges);
+            parse(solutionXml, keepText);
         }
 
         public boolean hasSolution() {
             return solution != null;
         }
 
+        /**
+         * Number of solutions in the pool. Without a pool in the <code>.sol</code> file, the incumbent is the only one.
+         */
+        public int getPoolSize() {
+            if (poolSize > 0)
+                return poolSize;
+            return feasible ? 1 : 0;
+        }
+
+        double[] getPoolValues(int soln) throws IloException {
+            checkPoolIndex(soln);
+            return poolSize > 0 ? poolValues[soln] : values;
+        }
+
+        public double getPoolObjective(int soln) throws IloException {
+            checkPoolIndex(soln);
+            return poolSize > 0 ? poolObjectives[soln] : objective;
+        }
+
+        private void checkPoolIndex(int soln) throws IloException {
+            if (soln < 0 || soln >= getPoolSize())
+                throw new IloException("No solution " + soln + " in the pool of " + getPoolSize() + " solutions");
+        }
+
+        private double[] addPoolSolution(double objective) {
+            if (poolValues == null) {
+                poolValues = new double[4][];
+                poolObjectives = new double[4];
+            } else if (poolSize == poolValues.length) {
+                poolValues = Arrays.copyOf(poolValues, 2 * poolSize);
+                poolObjectives = Arrays.copyOf(poolObjectives, 2 * poolSize);
+            }
+            double[] values = new double[numVars];
+            Arrays.fill(values, Double.NaN);
+            poolValues[poolSize] = values;
+            poolObjectives[poolSize] = objective;
+            poolSize++;
+            return values;
+        }
+
         public String getSolution() {
             return solution;
         }
@@ -134,42 +328,100 @@ abstract class ExternalCplex extends NotSupportedCplex {
         public void reset() {
             solution = null;
             feasible = false;
-            name2val = new HashMap<>();
-            var2val = new HashMap<>();
-            name2ReducedCost = new HashMap<>();
-            name2dual = new HashMap<>();
-            rng2dual = new HashMap<>();
-            name2slack = new HashMap<>();
-            rng2slack = new HashMap<>();
+            values = null;
+            reducedCosts = null;
+            duals = null;
+            slacks = null;
+            poolValues = null;
+            poolObjectives = null;
+            poolSize = 0;
             objective = Double.NaN;
             status = -1;
             pfeas = false;
             dfeas = false;
+            statistics = new SolveStatistics();
         }
 
         /**
          * Parse a CPLEX <code>.sol</code> file.
-         * See {@link #parse(InputStream, Set, Set)} for details.
+         * See {@link #parse(InputStream, boolean)} for details.
          */
-        public void parse(File solutionXml, Set<String> knownVariables, Set<String> knownConstraints) throws IOException, IloException {
-                reset();
-                try (FileInputStream fis = new FileInputStream(solutionXml)) {
-                    parse(fis, knownVariables, knownConstraints);
+        public void parse(File solutionXml) throws IOException, IloException {
+                try (InputStream fis = new BufferedInputStream(new FileInputStream(solutionXml))) {
+                    parse(fis, true);
                 }
-                try (FileInputStream fis = new FileInputStream(solutionXml)) {
-                    ByteArrayOutputStream result = new ByteArrayOutputStream();
-                    byte[] buffer = new byte[1024];
-                    int length;
-                    while ((length = fis.read(buffer)) != -1) {
-                        result.write(buffer, 0, length);
-                    }
-                    // StandardCharsets.UTF_8.name() > JDK 7
-                    solution = result.toString("UTF-8");
+        }
+
+        /**
+         * Parse a CPLEX <code>.sol</code> stream in a single pass.
+         *
+         * @param keepText If true the raw text of the solution is also kept, to be sent back as a warm start.
+         */
+        public void parse(InputStream solutionXml, boolean keepText) throws IOException, IloException {
+            if (!keepText) {
+                parse(solutionXml);
+                return;
+            }
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            TeeInputStream tee = new TeeInputStream(solutionXml, text);
+            parse(tee);
+            // The parser stops at the end of the root element, the warm start needs the whole file.
+            tee.drain();
+            solution = text.toString("UTF-8");
+        }
+
+        /* Copies what is read to a buffer. */
+        private static class TeeInputStream extends FilterInputStream {
+            private final OutputStream copy;
+
+            TeeInputStream(InputStream in, OutputStream copy) {
+                super(in);
+                this.copy = copy;
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b != -1)
+                    copy.write(b);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = in.read(b, off, len);
+                if (n > 0)
+                    copy.write(b, off, n);
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                byte[] buffer = new byte[(int) Math.min(n, 8192)];
+                int read = read(buffer, 0, buffer.length);
+                return Math.max(read, 0);
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+
+            void drain() throws IOException {
+                byte[] buffer = new byte[8192];
+                while (read(buffer, 0, buffer.length) != -1) {
+                    // copied by read
                 }
+            }
         }
 
         private enum ParserState {
-            INITIAL, SOLUTION, HEADER, QUALITY, VARIABLES, LINEAR_CONSTRAINTS,
+            INITIAL,
+            /**
+             * In a <CPLEXSolutions> element, between its solutions.
+             */
+            SOLUTIONS,
+            SOLUTION, HEADER, QUALITY, VARIABLES, LINEAR_CONSTRAINTS,
             /**
              * Unknown children of a <CPLEXSolution> element.
              */
@@ -179,29 +431,56 @@ abstract class ExternalCplex extends NotSupportedCplex {
 
         private static String[] getAttributes(XMLStreamReader reader, String... attrs) {
             final String[] ret = new String[attrs.length];
-            final Map<String, String> attrMap = new HashMap<>();
-            for (final String s : attrs)
-                attrMap.put(s, null);
             final int nattrs = reader.getAttributeCount();
             for (int i = 0; i < nattrs; ++i) {
                 final String name = reader.getAttributeLocalName(i);
-                if (attrMap.containsKey(name))
-                    attrMap.put(name, reader.getAttributeValue(i));
+                for (int j = 0; j < attrs.length; ++j) {
+                    if (attrs[j].equals(name)) {
+                        ret[j] = reader.getAttributeValue(i);
+                        break;
+                    }
+                }
             }
-            for (int i = 0; i < attrs.length; ++i)
-                ret[i] = attrMap.get(attrs[i]);
             return ret;
         }
 
+        /**
+         * Index of a synthetic name such as <code>vv1a</code>, -1 if the name was not built by the naming strategy
+         * or is out of range.
+         */
+        static int getIndex(String name, char prefix, int size) {
+            if (name.length() < 3 || name.length() > 10 || name.charAt(0) != prefix || name.charAt(1) != prefix)
+                return -1;
+            long index = 0;
+            for (int i = 2; i < name.length(); i++) {
+                int digit = Character.digit(name.charAt(i), 16);
+                if (digit < 0)
+                    return -1;
+                index = index * 16 + digit;
+            }
+            index = index - 1;
+            return index >= 0 && index < size ? (int) index : -1;
+        }
+
         /**
          * Parse a CPLEX <code>.sol</code> file.
          *
+         * Only the variables and ranges named by the naming strategy are extracted from <code>solutionXml</code>.
+         * The file holds either one <code>CPLEXSolution</code>, or a <code>CPLEXSolutions</code> element with the
+         * incumbent followed by the solutions of the pool (solutionIndex 0, 1...): the first solution is the incumbent,
+         * only the objective and values of the pool solutions are kept.
+         *
          * @param solutionXml    The CPLEX <code>.sol</code> file to parse.
-         * @param knownVariables The names of the variables for which values should be extracted from <code>solutionXml</code>.
          * @throws IloException If an input/output error occurs or mandatory solution information is missing.
          */
-        private void parse(InputStream solutionXml, Set<String> knownVariables, Set<String> knownConstraints) throws IOException, IloException {
+        private void parse(InputStream solutionXml) throws IOException, IloException {
             reset();
+            values = new double[numVars];
+            reducedCosts = new double[numVars];
+            Arrays.fill(values, Double.NaN);
+            Arrays.fill(reducedCosts, Double.NaN);
+            duals = new double[numRanges];
+            slacks = new double[numRanges];
 
             boolean ok = false;
             try {
@@ -211,6 +490,9 @@ abstract class ExternalCplex extends NotSupportedCplex {
                  * in a CPLEXSolution element. */
                 ParserState state = ParserState.INITIAL;
                 int solnum = -1; // Solution number for error messages.
+                boolean multiple = false; // In a <CPLEXSolutions> element.
+                double[] target = this.values; // Values of the solution being parsed, null to skip them.
+                boolean firstInPool = false;
                 while (reader.hasNext() && state != ParserState.FINISHED) {
                     String element;
                     String[] attrs;
@@ -221,14 +503,24 @@ abstract class ExternalCplex extends NotSupportedCplex {
                             element = reader.getLocalName();
                             switch (state) {
                                 case INITIAL:
-                                    // First element must be <CPLEXSolution>
-                                    if (element.equals("CPLEXSolution")) {
+                                    // First element must be <CPLEXSolution> or <CPLEXSolutions>
+                                    if (element.equals("CPLEXSolutions")) {
+                                        multiple = true;
+                                        state = ParserState.SOLUTIONS;
+                                    } else if (element.equals("CPLEXSolution")) {
                                         ++solnum;
                                         state = ParserState.SOLUTION;
                                         this.feasible = true;
                                     } else
                                         throw new IOException(MALFORMED_XML);
                                     break;
+                                case SOLUTIONS:
+                                    if (!element.equals("CPLEXSolution"))
+                                        throw new IOException(MALFORMED_XML);
+                                    ++solnum;
+                                    state = ParserState.SOLUTION;
+                                    this.feasible = true;
+                                    break;
                                 case HEADER:
                                     throw new IOException(MALFORMED_XML);
                                 case QUALITY:
@@ -236,15 +528,29 @@ abstract class ExternalCplex extends NotSupportedCplex {
                                 case SOLUTION:
                                     if (element.equals("header")) {
                                         state = ParserState.HEADER;
-                                        attrs = getAttributes(reader, "objectiveValue", "solutionStatusValue", "primalFeasible", "dualFeasible");
+                                        attrs = getAttributes(reader, "objectiveValue", "solutionStatusValue", "primalFeasible", "dualFeasible", "solutionIndex");
                                         if (attrs[0] == null)
                                             throw new IOException("No objective for solution " + solnum);
+                                        if (solnum > 0) {
+                                            // A solution of the pool.
+                                            target = attrs[4] != null && Integer.parseInt(attrs[4]) >= 0 ? addPoolSolution(Double.parseDouble(attrs[0])) : null;
+                                            break;
+                                        }
+                                        // Without incumbent before the pool, the first solution of the pool is also the incumbent.
+                                        firstInPool = multiple && attrs[4] != null && Integer.parseInt(attrs[4]) >= 0;
                                         this.objective = Double.parseDouble(attrs[0]);
                                         if (attrs[1] == null)
                                             throw new IOException("No solution status for solution " + solnum);
                                         this.status = Integer.parseInt(attrs[1]);
                                         this.pfeas = attrs[2] != null && Integer.parseInt(attrs[2]) != 0;
                                         this.dfeas = attrs[3] != null && Integer.parseInt(attrs[3]) != 0;
+                                        attrs = getAttributes(reader, "MIPNodes", "MIPIterations", "simplexIterations", "barrierIterations");
+                                        if (attrs[0] != null)
+                                            statistics.nodes = Long.parseLong(attrs[0]);
+                                        if (attrs[1] != null)
+                                            statistics.iterations = Long.parseLong(attrs[1]);
+                                        else if (attrs[2] != null || attrs[3] != null)
+                                            statistics.iterations = (attrs[2] == null ? 0 : Long.parseLong(attrs[2])) + (attrs[3] == null ? 0 : Long.parseLong(attrs[3]));
                                     } else if (element.equals("quality")) {
                                         state = ParserState.QUALITY;
                                     } else if (element.equals("variables")) {
@@ -267,33 +573,34 @@ abstract class ExternalCplex extends NotSupportedCplex {
                                     if (attrs[0] != null) {
                                         if (attrs[1] == null)
                                             throw new IOException("Variable without value in solution file for solution " + solnum);
-                                        if (knownVariables.contains(attrs[0]))
-                                            this.name2val.put(attrs[0], new Double(attrs[1]));
-                                        if (attrs[2] == null) {
-                                            // CAN BE MIP
-                                            //ignore it
-                                        } else {
-                                            if (knownVariables.contains(attrs[0]))
-                                                this.name2ReducedCost.put(attrs[0], new Double(attrs[2]));
+                                        int index = getIndex(attrs[0], 'v', numVars);
+                                        if (index >= 0 && target != null) {
+                                            target[index] = Double.parseDouble(attrs[1]);
+                                            if (solnum > 0 || attrs[2] == null) {
+                                                // CAN BE MIP
+                                                //ignore it
+                                            } else
+                                                this.reducedCosts[index] = Double.parseDouble(attrs[2]);
                                         }
                                     }
                                     break;
                                 case LINEAR_CONSTRAINTS:
+                                    if (solnum > 0)
+                                        break;
                                     attrs = getAttributes(reader, "name", "dual", "slack");
                                     if (attrs[0] != null) {
-                                        if (attrs[1] == null) {
-                                            // CAN BE MIP
-                                            //ignore it
-                                        } else {
-                                            if (knownConstraints.contains(attrs[0]))
-                                                this.name2dual.put(attrs[0], new Double(attrs[1]));
-                                        }
-                                        if (attrs[2] == null) {
-                                            // CAN BE MIP
-                                            //ignore it
-                                        } else {
-                                            if (knownConstraints.contains(attrs[0]))
-                                                this.name2slack.put(attrs[0], new Double(attrs[2]));
+                                        int index = getIndex(attrs[0], 'c', numRanges);
+                                        if (index >= 0) {
+                                            if (attrs[1] == null) {
+                                                // CAN BE MIP
+                                                //ignore it
+                                            } else
+                                                this.duals[index] = Double.parseDouble(attrs[1]);
+                                            if (attrs[2] == null) {
+                                                // CAN BE MIP
+                                                //ignore it
+                                            } else
+                                                this.slacks[index] = Double.parseDouble(attrs[2]);
                                         }
                                     }
                                     break;
@@ -309,13 +616,21 @@ abstract class ExternalCplex extends NotSupportedCplex {
                             element = reader.getLocalName();
                             switch (state) {
                                 case INITIAL:
-                                    // This should not happen since we stop after the first solution
+                                    // This should not happen since we stop at the end of the root element
                                     throw new IOException(MALFORMED_XML);
+                                case SOLUTIONS:
+                                    if (!element.equals("CPLEXSolutions"))
+                                        throw new IOException(MALFORMED_XML);
+                                    state = ParserState.FINISHED;
+                                    break;
                                 case SOLUTION:
                                     if (!element.equals("CPLEXSolution"))
                                         throw new IOException(MALFORMED_XML);
-                                    // We only parse the very first solution in the file.
-                                    state = ParserState.FINISHED;
+                                    if (firstInPool) {
+                                        System.arraycopy(this.values, 0, addPoolSolution(this.objective), 0, numVars);
+                                        firstInPool = false;
+                                    }
+                                    state = multiple ? ParserState.SOLUTIONS : ParserState.FINISHED;
                                     break;
                                 case HEADER:
                                     if (!element.equals("header"))
@@ -458,95 +773,154 @@ abstract class ExternalCplex extends NotSupportedCplex {
     public boolean solve() throws IloException {
        return process(null, null);
     }
-    private boolean process(Relaxations relaxer, Conflicts conflicts) throws IloException{
-        HashMap<IloNumVar, String> oldVarNames = new HashMap<>(_variables.size());
 
-        HashMap<IloRange, String> oldRngNames = new HashMap<>(this.getNrows());
+    /**
+     * Solves the model and populates its solution pool, read with {@link #getSolnPoolNsolns()},
+     * {@link #getObjValue(int)} and {@link #getValues(IloNumVar[], int, int, int)}.
+     */
+    @Override
+    public boolean populate() throws IloException {
+        try {
+            name();
+            result = externalPopulate(_variables.size(), _ranges.size());
+            return result.feasible;
+        } finally {
+            restoreNames();
+        }
+    }
 
+    /**
+     * Starts a solve without waiting for its end: the future completes with what {@link #solve()} returns once the
+     * solution is read, which is done on the executor. The model must not be changed or solved before.
+     * Cancelling the future cancels the solve, a WML job is deleted.
+     */
+    public CompletableFuture<Boolean> submit(Executor executor) throws IloException {
+        CompletableFuture<Solution> submitted;
         try {
-            // In order to consume a solution file, _all_ variables must have
-            // a name! Go through the model and collect all variables, thereby
-            // checking that they have a name and names are unique.
-            final HashMap<String, IloNumVar> vars = new HashMap<>(_variables.size());
-            final HashMap<String, IloRange> rngs = new HashMap<>();
-            long t1 = new Date().getTime();
-            for (IloNumVar v: _variables)
-                addVariable(vars, oldVarNames, v);
-            for (Iterator<?> it = iterator(); it.hasNext(); /* nothing */) {
-                final Object o = it.next();
-                if (o instanceof IloLPMatrix) {
-// ignore
-                    IloLPMatrix matrix = (IloLPMatrix)o;
-                    IloRange[] ranges = matrix.getRanges();
-                    for (IloRange r: ranges)
-                        addRange(rngs, oldRngNames, r);
-                } else if (o instanceof IloObjective) {
-// ignore
-                } else if (o instanceof IloRange) {
-                    addRange(rngs, oldRngNames, (IloRange) o);
-                } else if (o instanceof IloNumVar) {
-// ignore
-                } else if (o instanceof IloConversion) {
-                    // ignore
-                } else
-                    throw new IloException("Cannot handle " + o);
+            name();
+            submitted = externalSubmit(_variables.size(), _ranges.size(), executor);
+        } finally {
+            restoreNames();
+        }
+        return LinkedFuture.of(submitted, submitted.thenApply(new Function<Solution, Boolean>() {
+            @Override
+            public Boolean apply(Solution solution) {
+                result = solution;
+                return solution.feasible;
             }
+        }));
+    }
 
-            long t2 = new Date().getTime();
-            logger.info("Naming stategy took " + (t2-t1)/1000 + " seconds.");
+    private boolean process(Relaxations relaxer, Conflicts conflicts) throws IloException{
+        try {
+            name();
             // Now perform the solve
-            result = externalSolve(vars.keySet(), rngs.keySet(), relaxer, conflicts);
-
-            // Transfer non-zeros indexed by name to non-zeros indexed by object.
-            for (final Map.Entry<String, Double> e : result.name2val.entrySet()) {
-                result.var2val.put(vars.get(e.getKey()), e.getValue());
-            }
-            result.name2val.clear();
-            for (final Map.Entry<String, Double> e : result.name2ReducedCost.entrySet()) {
-                result.var2ReducedCost.put(vars.get(e.getKey()), e.getValue());
-            }
-            result.name2ReducedCost.clear();
-
-            // Transfer non-zeros indexed by name to non-zeros indexed by object.
-            for (final Map.Entry<String, Double> e : result.name2dual.entrySet()) {
-                result.rng2dual.put(rngs.get(e.getKey()), e.getValue());
-            }
-            for (IloRange r: oldRngNames.keySet())
-                    result.rng2dual.putIfAbsent(r, 0.0);
-            result.name2dual.clear();
-
-            // Transfer non-zeros indexed by name to non-zeros indexed by object.
-            for (final Map.Entry<String, Double> e : result.name2slack.entrySet()) {
-                result.rng2slack.put(rngs.get(e.getKey()), e.getValue());
-            }
-            for (IloRange r: oldRngNames.keySet())
-                result.rng2slack.putIfAbsent(r, 0.0);
-            result.name2slack.clear();
+            result = externalSolve(_variables.size(), _ranges.size(), relaxer, conflicts);
 
             return result.feasible;
         } finally {
-            // Restore original names if necessary.
-            for (Map.Entry<IloNumVar, String> e : oldVarNames.entrySet())
-                e.getKey().setName(e.getValue());
+            restoreNames();
+        }
+    }
 
-            // Restore original names if necessary.
-            for (Map.Entry<IloRange, String> e : oldRngNames.entrySet())
-                e.getKey().setName(e.getValue());
+    private void name() throws IloException {
+        // In order to consume a solution file, _all_ variables must have
+        // a name! The registries give a unique synthetic name to each variable and range.
+        long t1 = new Date().getTime();
+        if (_unsupported != null)
+            throw new IloException("Cannot handle " + _unsupported);
+        for (Iterator<?> it = iterator(); it.hasNext(); /* nothing */) {
+            final Object o = it.next();
+            if (isRegistered(o))
+                continue;
+            if (!(o instanceof IloAddable))
+                throw new IloException("Cannot handle " + o);
+            register((IloAddable) o);
+        }
+        if (_unsupported != null)
+            throw new IloException("Cannot handle " + _unsupported);
+        registerMatrixRows();
+        _variables.renameAll();
+        _ranges.renameAll();
+
+        long t2 = new Date().getTime();
+        logger.info("Naming stategy took " + (t2-t1)/1000 + " seconds.");
+    }
+
+    private void restoreNames() throws IloException {
+        // Restore original names if necessary.
+        try {
+            _variables.restore();
+        } finally {
+            _ranges.restore();
         }
     }
 
     /**
      * Perform an external solve.
      * The function must not return <code>null</code>.
-     * All fields but {@link Solution#var2val} must be setup in the returned {@link Solution} instance.
-     * Field {@link Solution#var2val} will be setup in {@link #solve()} from {@link Solution#name2val}. The latter
-     * will also be cleared in {@link #solve()}.
+     * The variables are named <code>vv%x</code> and the ranges <code>cc%x</code> during the solve, x being their
+     * ordinal in the registries plus 1; the solution stores their values at index x-1.
      *
-     * @param variables The names of variables known to the solver.
+     * @param numVars The number of variables known to the solver.
+     * @param numRanges The number of ranges known to the solver.
      * @return Solution information for the solve.
      * @throws IloException if anything goes wrong.
      */
-    protected abstract Solution externalSolve(Set<String> variables, Set<String> ranges, Relaxations relax, Conflicts conflicts) throws IloException;
+    protected abstract Solution externalSolve(int numVars, int numRanges, Relaxations relax, Conflicts conflicts) throws IloException;
+
+    /**
+     * Perform an external populate, called with the same names as {@link #externalSolve}: the returned solution
+     * holds the solution pool. The default is not supported.
+     */
+    protected Solution externalPopulate(int numVars, int numRanges) throws IloException {
+        logger.error(notSupportedError + " populate");
+        throw new IloException(notSupportedError);
+    }
+
+    /**
+     * Starts an external solve, called with the same names as {@link #externalSolve}.
+     * The default solves and returns a completed future.
+     *
+     * @param executor Where the solution is read.
+     */
+    protected CompletableFuture<Solution> externalSubmit(int numVars, int numRanges, Executor executor) throws IloException {
+        return CompletableFuture.completedFuture(externalSolve(numVars, numRanges, null, null));
+    }
+
+    /**
+     * The bound and objective changes made since the last call to {@link #setModelBase()}, in the format
+     * of {@link ChangeJournal}. Null if there is no base or if the model changed in a way the changes cannot describe:
+     * objects added or removed, coefficients changed, non linear expressions.
+     * Must be called during {@link #externalSolve}, while the synthetic names are set.
+     */
+    protected byte[] getModelChanges() throws IloException {
+        return _journal.getChanges(_variables, _ranges, _structure, getObjective());
+    }
+
+    /**
+     * Records the current model as the base of the next changes, once it has been exported.
+     */
+    protected void setModelBase() throws IloException {
+        _journal.setBase(_variables, _ranges, _structure, getObjective());
+    }
+
+    /**
+     * Forgets the base model: the next solve exports the whole model.
+     * The structure and coefficient changes are found at each solve, this is only needed to force a full export.
+     */
+    public void resetModelBase() {
+        _journal.clear();
+    }
+
+    /* NaN for an object unknown to the solve, the default value when the solution has no values. */
+    private static double getSolutionValue(double[] values, int index, int size, double missing) {
+        if (index < 0 || index >= size)
+            return Double.NaN;
+        if (values == null)
+            return missing;
+        return values[index];
+    }
 
     // Below we overwrite a bunch of IloCplex functions that query solutions.
     // Add your own overwrites if you need more.
@@ -564,8 +938,8 @@ abstract class ExternalCplex extends NotSupportedCplex {
     public double getValue(IloNumVar v) throws IloException {
         if (result == null)
             throw new IloException("No solution available");
-        final Double d = result.var2val.get(v);
-        if (d == null)
+        final double d = getSolutionValue(result.values, _variables.getOrdinal(v), result.numVars, Double.NaN);
+        if (Double.isNaN(d))
             throw new IloException("Impossible to query variable value: Unkown variable "+ v + " in the solution.");
         return d;
     }
@@ -592,12 +966,91 @@ abstract class ExternalCplex extends NotSupportedCplex {
         return ret;
     }
 
+    /**
+     * Statistics of the last solve, null if there was no solve.
+     */
+    public SolveStatistics getSolveStatistics() {
+        return result == null ? null : result.statistics;
+    }
+
+    @Override
+    public double getBestObjValue() throws IloException {
+        if (result == null || Double.isNaN(result.statistics.getBestObjValue()))
+            throw new IloException("No best bound available");
+        return result.statistics.getBestObjValue();
+    }
+
+    @Override
+    public double getMIPRelativeGap() throws IloException {
+        if (result == null || Double.isNaN(result.statistics.getMIPRelativeGap()))
+            throw new IloException("No MIP gap available");
+        return result.statistics.getMIPRelativeGap();
+    }
+
+    @Override
+    public int getNnodes() {
+        return result == null ? 0 : (int) Math.min(result.statistics.getNnodes(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getNiterations64() {
+        return result == null ? 0 : result.statistics.getNiterations();
+    }
+
+    @Override
+    public int getSolnPoolNsolns() throws IloException {
+        return result == null ? 0 : result.getPoolSize();
+    }
+
+    @Override
+    public double getObjValue(int soln) throws IloException {
+        if (result == null)
+            throw new IloException("No solution available");
+        return result.getPoolObjective(soln);
+    }
+
+    @Override
+    public double getSolnPoolMeanObjValue() throws IloException {
+        if (result == null || result.getPoolSize() == 0)
+            throw new IloException("No solution available");
+        double sum = 0.0;
+        for (int i = 0; i < result.getPoolSize(); i++)
+            sum += result.getPoolObjective(i);
+        return sum / result.getPoolSize();
+    }
+
+    /**
+     * Value of a variable in a solution of the pool.
+     */
+    public double getValue(IloNumVar v, int soln) throws IloException {
+        if (result == null)
+            throw new IloException("No solution available");
+        final double d = getSolutionValue(result.getPoolValues(soln), _variables.getOrdinal(v), result.numVars, Double.NaN);
+        if (Double.isNaN(d))
+            throw new IloException("Impossible to query variable value: Unkown variable "+ v + " in solution " + soln + " of the pool.");
+        return d;
+    }
+
+    @Override
+    public double[] getValues(IloNumVar[] var, int start, int num, int soln) throws IloCplex.UnknownObjectException, IloException {
+        if (num < 0) throw new IloException("Cannot get values: " + start + " " + num);
+        double[] ret = new double[num];
+        for (int i = 0; i < num; i++)
+            ret[i] = getValue(var[start + i], soln);
+        return ret;
+    }
+
+    /* The value in the incumbent if soln is negative. */
+    private double getSolnValue(IloNumVar v, int soln) throws IloException {
+        return soln < 0 ? getValue(v) : getValue(v, soln);
+    }
+
         @Override
     public double getDual(IloRange r) throws IloException {
         if (result == null)
             throw new IloException("No solution available");
-        final Double d = result.rng2dual.get(r);
-        if (d == null) throw new IloException("Impossible to query dual for range: Unknown range "+ r +" in the solution");
+        final double d = getSolutionValue(result.duals, _ranges.getOrdinal(r), result.numRanges, 0.0);
+        if (Double.isNaN(d)) throw new IloException("Impossible to query dual for range: Unknown range "+ r +" in the solution");
         return d;
     }
 
@@ -631,8 +1084,8 @@ abstract class ExternalCplex extends NotSupportedCplex {
     public double getReducedCost(IloNumVar v) throws IloCplex.UnknownObjectException, IloException {
         if (result == null)
             throw new IloException("No solution available");
-        final Double d = result.var2ReducedCost.get(v);
-        if (d== null) throw new IloException("Impossible to get the reduced cost: Unkown variable "+v+ " in the solution");
+        final double d = getSolutionValue(result.reducedCosts, _variables.getOrdinal(v), result.numVars, Double.NaN);
+        if (Double.isNaN(d)) throw new IloException("Impossible to get the reduced cost: Unkown variable "+v+ " in the solution");
         return d;
     }
     @Override
@@ -661,9 +1114,9 @@ abstract class ExternalCplex extends NotSupportedCplex {
     public double getSlack(IloRange r) throws IloCplex.UnknownObjectException, IloException {
         if (result == null)
             throw new IloException("No solution available");
-        final Double d = result.rng2slack.get(r);
-        if (d== null) throw new IloException("Impossible to query the slack for range "+r+ ": Unkown range in the solution");
-        return d.doubleValue();
+        final double d = getSolutionValue(result.slacks, _ranges.getOrdinal(r), result.numRanges, 0.0);
+        if (Double.isNaN(d)) throw new IloException("Impossible to query the slack for range "+r+ ": Unkown range in the solution");
+        return d;
     }
 
     @Override
@@ -700,55 +1153,65 @@ abstract class ExternalCplex extends NotSupportedCplex {
         return false;
     }
 
-    private double computeQuadExprSum(IloLQNumExpr quad) throws IloException {
+    private double computeQuadExprSum(IloLQNumExpr quad, int soln) throws IloException {
         IloQuadNumExprIterator it = quad.quadIterator();
         double res = 0.0;
         while (it.hasNext()){
-            res += getValue(it.getNumVar1())*getValue(it.getNumVar2())*it.getValue();
+            res += getSolnValue(it.getNumVar1(), soln)*getSolnValue(it.getNumVar2(), soln)*it.getValue();
         }
-        res += computeLinearExprSum(quad);
+        res += computeLinearExprSum(quad, soln);
         return res;
     }
-    private double computeQuadExprSum(IloLQIntExpr quad) throws IloException {
+    private double computeQuadExprSum(IloLQIntExpr quad, int soln) throws IloException {
         IloQuadIntExprIterator it = quad.quadIterator();
         double res = 0.0;
         while (it.hasNext()){
-            res += getValue(it.getIntVar1())*getValue(it.getIntVar2())*it.getValue();
+            res += getSolnValue(it.getIntVar1(), soln)*getSolnValue(it.getIntVar2(), soln)*it.getValue();
         }
-        res += computeLinearExprSum(quad);
+        res += computeLinearExprSum(quad, soln);
         return res;
     }
-    private double computeLinearExprSum(IloLinearNumExpr linear) throws IloException {
+    private double computeLinearExprSum(IloLinearNumExpr linear, int soln) throws IloException {
         IloLinearNumExprIterator it = linear.linearIterator();
         double res = 0.0;
         while (it.hasNext()){
-            double val = getValue(it.nextNumVar())*it.getValue();
+            double val = getSolnValue(it.nextNumVar(), soln)*it.getValue();
             res += val;
         }
         return res;
     }
-    private double computeLinearExprSum(IloLinearIntExpr linear) throws IloException {
+    private double computeLinearExprSum(IloLinearIntExpr linear, int soln) throws IloException {
         IloLinearIntExprIterator it = linear.linearIterator();
         double res = 0.0;
         while (it.hasNext()){
-            double val = it.getValue() * getValue(it.nextIntVar());
+            double val = it.getValue() * getSolnValue(it.nextIntVar(), soln);
             res += val;
         }
         return res;
     }
-    @Override
-    public double getValue(IloNumExpr var) throws IloException {
+    /* The value in the incumbent if soln is negative. */
+    private double computeExpr(IloNumExpr var, int soln) throws IloException {
         if (var instanceof IloLQNumExpr){
             IloLQNumExpr q = (IloLQNumExpr)var;
-            return computeQuadExprSum(q)+q.getConstant();
+            return computeQuadExprSum(q, soln)+q.getConstant();
         }
         if (var instanceof IloLQIntExpr){
             IloLQIntExpr q = (IloLQIntExpr)var;
-            return computeQuadExprSum(q)+q.getConstant();
+            return computeQuadExprSum(q, soln)+q.getConstant();
         }
         logger.error(notSupportedError+" getValue: non quad expr, non linear expr");
         throw new RuntimeException(notSupportedError);
     }
+    @Override
+    public double getValue(IloNumExpr var) throws IloException {
+        return computeExpr(var, -1);
+    }
+    @Override
+    public double getValue(IloNumExpr var, int soln) throws IloException {
+        if (soln < 0)
+            throw new IloException("No solution " + soln + " in the pool");
+        return computeExpr(var, soln);
+    }
 
 
     @Override
@@ -0,0 +1,119 @@
+package ilog.cplex;
+
+import ilog.concert.IloAddable;
+import ilog.concert.IloException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+Persistent registry of the variables or ranges of a model.
+Each object gets an ordinal once, when it is registered, and the synthetic name prefix%x (ordinal + 1) used in the
+exported model, so that the solution values are stored by ordinal without building a map of names at each solve.
+Each solve gives their synthetic name to all the objects and restores their names after, null included: a name
+given at any time is seen by the next solve, and never shows through getName.
+ */
+final class OrdinalRegistry<T extends IloAddable> {
+    private final String prefix;
+    private final HashMap<T, Integer> ordinals = new HashMap<>();
+    private IloAddable[] objects = new IloAddable[16];
+    private String[] names = new String[16];
+    private int size = 0;
+
+    // Names to restore after the current solve.
+    private int[] renamed = new int[16];
+    private String[] oldNames = new String[16];
+    private int numRenamed = 0;
+
+    OrdinalRegistry(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /*
+    Returns the ordinal of the object, registering it if needed.
+     */
+    int add(T o) {
+        Integer ordinal = ordinals.get(o);
+        if (ordinal != null)
+            return ordinal;
+        if (size == objects.length) {
+            objects = Arrays.copyOf(objects, 2 * size);
+            names = Arrays.copyOf(names, 2 * size);
+        }
+        objects[size] = o;
+        ordinals.put(o, size);
+        return size++;
+    }
+
+    /* -1 if the object is unknown. */
+    int getOrdinal(T o) {
+        Integer ordinal = ordinals.get(o);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int ordinal) {
+        return (T) objects[ordinal];
+    }
+
+    int size() {
+        return size;
+    }
+
+    String getName(int ordinal) {
+        String name = names[ordinal];
+        if (name == null) {
+            name = prefix + Integer.toHexString(ordinal + 1);
+            names[ordinal] = name;
+        }
+        return name;
+    }
+
+    /*
+    Gives its synthetic name to an object, remembering its current name, null included.
+     */
+    void rename(int ordinal) throws IloException {
+        IloAddable o = objects[ordinal];
+        String name = o.getName();
+        String synthetic = getName(ordinal);
+        if (synthetic.equals(name))
+            return;
+        if (numRenamed == renamed.length) {
+            renamed = Arrays.copyOf(renamed, 2 * numRenamed);
+            oldNames = Arrays.copyOf(oldNames, 2 * numRenamed);
+        }
+        renamed[numRenamed] = ordinal;
+        oldNames[numRenamed] = name;
+        numRenamed++;
+        o.setName(synthetic);
+    }
+
+    /*
+    Renames all the registered objects.
+     */
+    void renameAll() throws IloException {
+        for (int i = 0; i < size; i++)
+            rename(i);
+    }
+
+    /*
+    Restores the names changed by rename.
+     */
+    void restore() throws IloException {
+        try {
+            for (int i = 0; i < numRenamed; i++)
+                objects[renamed[i]].setName(oldNames[i]);
+        } finally {
+            Arrays.fill(oldNames, 0, numRenamed, null);
+            numRenamed = 0;
+        }
+    }
+
+    void clear() {
+        ordinals.clear();
+        Arrays.fill(objects, 0, size, null);
+        Arrays.fill(names, 0, size, null);
+        size = 0;
+        numRenamed = 0;
+    }
+}
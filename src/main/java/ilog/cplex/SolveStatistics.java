@@ -0,0 +1,70 @@
+package ilog.cplex;
+
+import com.ibm.ml.ilog.Job;
+import com.ibm.ml.ilog.Progress;
+
+/**
+ * Statistics of a remote solve: the MIP statistics of the <code>.sol</code> header and of the solve state of the job,
+ * and the time spent by the job in the WML queue, in the run and in the download of its output.
+ * The times are in msec, -1 if unknown.
+ */
+public class SolveStatistics {
+    double bestObjValue = Double.NaN;
+    double mipRelativeGap = Double.NaN;
+    long nodes = 0;
+    long iterations = 0;
+    long queueTime = -1;
+    long runTime = -1;
+    long downloadTime = -1;
+
+    /* The bound, gap and times reported by the job. */
+    void setJob(Job job) {
+        Progress progress = job.getProgress();
+        if (progress != null) {
+            if (Double.isNaN(bestObjValue))
+                bestObjValue = progress.getBestBound();
+            if (Double.isNaN(mipRelativeGap))
+                mipRelativeGap = progress.getGap();
+        }
+        queueTime = job.getQueueTime();
+        runTime = job.getRunTime();
+        downloadTime = job.getDownloadTime();
+    }
+
+    /** NaN if unknown. */
+    public double getBestObjValue() {
+        return bestObjValue;
+    }
+
+    /** NaN if unknown. */
+    public double getMIPRelativeGap() {
+        return mipRelativeGap;
+    }
+
+    public long getNnodes() {
+        return nodes;
+    }
+
+    /** Simplex, barrier or MIP iterations, depending on the solve. */
+    public long getNiterations() {
+        return iterations;
+    }
+
+    public long getQueueTime() {
+        return queueTime;
+    }
+
+    public long getRunTime() {
+        return runTime;
+    }
+
+    public long getDownloadTime() {
+        return downloadTime;
+    }
+
+    @Override
+    public String toString() {
+        return "bound=" + bestObjValue + " gap=" + mipRelativeGap + " nodes=" + nodes + " iterations=" + iterations
+                + " queue=" + queueTime + "ms run=" + runTime + "ms download=" + downloadTime + "ms";
+    }
+}
@@ -14,17 +14,29 @@ package ilog.cplex;
 
 import java.io.*;
 import java.util.Date;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
 
 import com.ibm.json.java.JSONArray;
 import com.ibm.json.java.JSONObject;
 import com.ibm.ml.ilog.Connector;
+import com.ibm.ml.ilog.v4.Racing;
+import com.ibm.ml.ilog.utils.ExportSink;
+import com.ibm.ml.ilog.utils.LinkedFuture;
+import com.ibm.ml.ilog.utils.Pipeline;
+import org.apache.http.HttpEntity;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.ibm.ml.ilog.Credentials;
 import com.ibm.ml.ilog.Job;
+import com.ibm.ml.ilog.ProgressListener;
 import ilog.concert.IloException;
+import ilog.concert.IloObjectiveSense;
 
 public class WmlCplex extends ExternalCplex {
     private static final Logger logger = LogManager.getLogger();
@@ -33,17 +45,28 @@ public class WmlCplex extends ExternalCplex {
     private final String wmlName;
     private final String cplexExportFormat;
     private final Integer timeLimit;
+    private final boolean deltaSolves;
+    // Reference to the last model sent in full, base of the delta solves.
+    private JSONObject baseModel = null;
+    private final Racing racing = new Racing();
     private Job job = null;
+    private IloCplex.Aborter aborter = null;
+    // Set while externalSubmit runs: the job is submitted and left in submitted instead of being waited for.
+    private boolean submitOnly = false;
+    private CompletableFuture<Job> submitted = null;
+    // Set while externalPopulate runs: the job runs on the worker deployment, which populates the pool.
+    private boolean populating = false;
 
 
     public WmlCplex(Credentials credentials, Connector.Runtime runtime, Connector.TShirtSize size, int numNodes) throws IloException {
         super();
         logger.info("Starting CPLEX with "+runtime+"."+size+"."+numNodes);
         wmlConnector = (com.ibm.ml.ilog.v4.Connector) Connector.getConnector(credentials, runtime, size, numNodes, "XML");
-        wmlName = Connector.getCplexPrefix()+runtime+"."+size+"."+numNodes;
+        wmlName = Connector.getDeploymentName(runtime, size, numNodes, true);
         cplexExportFormat = wmlConnector.config.getString("wmlconnector.v4.cplex_format");
         timeLimit = wmlConnector.config.getInt("wmlconnector.v4.time_limit");
         logger.info("Default time limit is "+ timeLimit + " minutes.");
+        deltaSolves = wmlConnector.config.getBoolean("wmlconnector.v4.delta_solve.enabled");
     }
 
     @Override
@@ -54,33 +77,121 @@ public class WmlCplex extends ExternalCplex {
         super.end();
     }
 
+    /**
+     * Also solves the model on another deployment at the same time, and keeps the first or the best answer.
+     */
+    public void addRacer(Connector.Runtime runtime, Connector.TShirtSize size, int numNodes) {
+        racing.add(runtime, size, numNodes);
+    }
+
+    /**
+     * Msec to wait for a better objective once a first racer is over with a solution, 0 (the default) to keep
+     * that first answer.
+     */
+    public void setRaceDeadline(long deadline) {
+        racing.setDeadline(deadline);
+    }
+
+    /**
+     * The listener receives the objective, best bound, gap and engine log tail of the WML job while it runs.
+     */
+    public void addProgressListener(ProgressListener listener) {
+        wmlConnector.addProgressListener(listener);
+    }
+
+    public void removeProgressListener(ProgressListener listener) {
+        wmlConnector.removeProgressListener(listener);
+    }
+
+    /**
+     * The WML job of a solve is cancelled once the aborter is aborted, the solve then returns the incumbent if any.
+     */
     @Override
-    protected Solution externalSolve(Set<String> knownVariables, Set<String> knownConstraints, Relaxations relaxer, Conflicts conflicts) throws IloException {
-        if (relaxer != null && conflicts != null)
-            throw new IloException("Cannot run CPLEX with both relaxer and conflicts.");
-        wmlConnector.initToken();
-        if (getParam(Param.TimeLimit) == getDefault(Param.TimeLimit)){
-            logger.info("Setting the time limit to default WML: "+timeLimit*60 + " seconds");
-            setParam(Param.TimeLimit, timeLimit*60);
+    public IloCplex.Aborter use(IloCplex.Aborter aborter) throws IloException {
+        this.aborter = aborter;
+        return aborter;
+    }
+
+    @Override
+    public IloCplex.Aborter getAborter() {
+        return aborter;
+    }
+
+    @Override
+    public void remove(IloCplex.Aborter aborter) throws IloException {
+        if (this.aborter == aborter)
+            this.aborter = null;
+    }
+
+    private boolean isAborted() {
+        IloCplex.Aborter a = aborter;
+        return a != null && a.isAborted();
+    }
+
+    /* True once the aborter in use is aborted. */
+    private class AbortCheck implements BooleanSupplier {
+        @Override
+        public boolean getAsBoolean() {
+            return isAborted();
         }
-        else{
-            logger.info("Time limit has been set by user to "+getParam(Param.TimeLimit));
+    }
+
+    /* Looks the token and the deployment up, on a pipeline thread. */
+    private class Connect implements Pipeline.Stage<String> {
+        private final boolean worker;
+
+        Connect(boolean worker) {
+            this.worker = worker;
         }
-        try {
-            // Create temporary files for model input and solution output.
-            final File model = File.createTempFile("cpx", cplexExportFormat);
 
-            final File solution = new File(model.getAbsolutePath() + ".sol");
-            solution.deleteOnExit();
+        @Override
+        public String run() throws IloException {
+            wmlConnector.initToken();
+            return worker ? wmlConnector.getOrMakeWorkerDeployment() : wmlConnector.getOrMakeDeployment(wmlName, true);
+        }
+    }
 
-            logger.info("Starting export");
-            long t1 = new Date().getTime();
-            exportModel(model.getAbsolutePath());
-            long t2 = new Date().getTime();
-            logger.info("Exported "+ cplexExportFormat + " file in " + (t2-t1)/1000 + " seconds");
+    @Override
+    protected Solution externalSolve(int numVars, int numRanges, Relaxations relaxer, Conflicts conflicts) throws IloException {
+        if (relaxer != null && conflicts != null)
+            throw new IloException("Cannot run CPLEX with both relaxer and conflicts.");
+        boolean deltaSolve = deltaSolves && relaxer == null && conflicts == null && !populating;
+        // The token and the deployment are looked up while the model is exported.
+        // The worker populates the pool and applies the changes of the delta solves.
+        Pipeline pipeline = new Pipeline("CPLEX solve");
+        Future<String> deployment = pipeline.async("deployment", new Connect(populating || (deltaSolve && baseModel != null)));
+        // CPLEX only exports to files: they are written in export.directory when it has room, the temporary directory otherwise.
+        try (ExportSink sink = new ExportSink("cpx", wmlConnector.config)) {
+            long t = new Date().getTime();
+            if (getParam(Param.TimeLimit) == getDefault(Param.TimeLimit)){
+                logger.info("Setting the time limit to default WML: "+timeLimit*60 + " seconds");
+                setParam(Param.TimeLimit, timeLimit*60);
+            }
+            else{
+                logger.info("Time limit has been set by user to "+getParam(Param.TimeLimit));
+            }
+            // Only the changes are sent when the model was already sent in full and its structure did not change.
+            byte[] changes = deltaSolve && baseModel != null ? getModelChanges() : null;
+            File model = null;
+            if (changes == null) {
+                logger.info("Starting export");
+                long t1 = new Date().getTime();
+                model = sink.export(cplexExportFormat, new ExportSink.Export() {
+                    @Override
+                    public void to(String path) throws IloException {
+                        exportModel(path);
+                    }
+                });
+                long t2 = new Date().getTime();
+                logger.info("Exported " + cplexExportFormat + " file in " + (t2 - t1) / 1000 + " seconds");
+                logger.info("Exported "+ cplexExportFormat + " file to " + model.getAbsolutePath());
+            } else
+                logger.info("Skipping the export: " + changes.length + " bytes of model changes");
+            t = pipeline.record(changes == null ? "export" : "changes", t);
 
-            final File parameters = File.createTempFile("cpx", ".prm");
+            final File parameters = sink.newFile(".prm");
             writeParam(parameters.getAbsolutePath());
+            t = pipeline.record("parameters", t);
 
             boolean hasAnnotation = (getNumDoubleAnnotations() + getNumLongAnnotations()) != 0;
 
@@ -89,13 +200,13 @@ public class WmlCplex extends ExternalCplex {
             File mst = null;
             File annotations = null;
             if (isMIP()) {
-                filters = File.createTempFile("cpx", ".flt");
+                filters = sink.newFile(".flt");
                 writeFilters(filters.getAbsolutePath());
 
                 // .MST
                 try {
                     getMIPStart(0); //must be called to ensure that writeMIPStarts will not fail.
-                    mst = File.createTempFile("cpx", ".mst");
+                    mst = sink.newFile(".mst");
                     writeMIPStarts(mst.getAbsolutePath());
                 }
                 catch (IloException e){
@@ -103,7 +214,6 @@ public class WmlCplex extends ExternalCplex {
                 }
             }
 
-            logger.info("Exported "+ cplexExportFormat + " file to " + model.getAbsolutePath());
             logger.info("Exported .prm file to " + parameters.getAbsolutePath());
             if (isMIP()){
                 if (filters != null)
@@ -112,16 +222,15 @@ public class WmlCplex extends ExternalCplex {
                     logger.info("Exported .mst file to " + mst.getAbsolutePath());
             }
             if (hasAnnotation){
-                annotations = File.createTempFile("cpx", ".ann");
+                annotations = sink.newFile(".ann");
                 logger.info("Exported "+ (getNumDoubleAnnotations() + getNumLongAnnotations()) + " annotations to "+ annotations.getAbsolutePath());
                 writeAnnotations(annotations.getAbsolutePath());
             }
             else
                 logger.info("No annotation to export.");
+            t = pipeline.record("filters", t);
 
             try {
-                String deploymentId = wmlConnector.getOrMakeDeployment(wmlName, true);
-
                 JSONArray input_data = new JSONArray();
                 // Its parameters
                 input_data.add(wmlConnector.createDataFromFile(wmlName +".prm", parameters.getAbsolutePath()));
@@ -136,6 +245,8 @@ public class WmlCplex extends ExternalCplex {
                 }
                 if (hasAnnotation)
                     input_data.add(wmlConnector.createDataFromFile(wmlName + ".ann", annotations.getAbsolutePath()));
+                if (populating)
+                    input_data.add(wmlConnector.createDataFromBytes(wmlName + ".populate", new byte[0]));
 
                 if (relaxer != null){
                     logger.info("Adding feasOpt support for "+relaxer.getSize() + " elements.");
@@ -152,42 +263,147 @@ public class WmlCplex extends ExternalCplex {
                         input_data.add(wmlConnector.createDataFromBytes(wmlName + "-conflicts.feasibility", conflicts.makeFile()));
                 }
 
+                t = pipeline.record("input data", t);
+                String deploymentId = pipeline.join("deployment", deployment);
+
                 long t3 = new Date().getTime();
-                byte[] payload = wmlConnector.buildPayload(deploymentId, wmlName + cplexExportFormat, model.getAbsolutePath(), input_data, null);
+                HttpEntity payload;
+                if (changes != null) {
+                    input_data.add(wmlConnector.createDataFromBytes(wmlName + ".delta", changes));
+                    JSONArray input_data_references = new JSONArray();
+                    input_data_references.add(baseModel);
+                    payload = wmlConnector.buildPayload(deploymentId, input_data, input_data_references, null);
+                } else if (deltaSolve) {
+                    baseModel = wmlConnector.getModelReference(wmlName + cplexExportFormat, model.getAbsolutePath());
+                    setModelBase();
+                    JSONArray input_data_references = new JSONArray();
+                    input_data_references.add(baseModel);
+                    payload = wmlConnector.buildPayload(deploymentId, input_data, input_data_references, null);
+                } else if (!racing.isEmpty() && !populating) {
+                    payload = null;
+                } else
+                    payload = wmlConnector.buildPayload(deploymentId, wmlName + cplexExportFormat, model.getAbsolutePath(), input_data, null);
                 long t4 = new Date().getTime();
                 logger.info("Building the payload took " + (t4 - t3) / 1000 + " seconds");
+                pipeline.record("payload", t3);
+                pipeline.log();
 
-                job = wmlConnector.createAndRunEngineJob(deploymentId, payload);
-                if (job.hasSolveState()) {
-                    logger.info("SolveStatus = " + job.getSolveStatus());
-                } else {
-                    throw new IloException(job.getJobStatus().toString());
-                }
-                if (job.getSolveStatus().equals("infeasible_solution")) {
-                    return new Solution(IloCplex.CplexStatus.Infeasible_Status);
-                }
-                String sol = job.getSolution();
-                if (sol != null) {
-                    // We have a feasible solution. Parse the solution file
-                    FileWriter myWriter = new FileWriter(solution.getAbsolutePath());
-                    myWriter.write(sol);
-                    myWriter.close();
-                    return new Solution(solution, knownVariables, knownConstraints);
+                if (payload == null) {
+                    Boolean minimize = getObjective() == null ? null : getObjective().getSense() == IloObjectiveSense.Minimize;
+                    job = racing.run(wmlConnector, deploymentId, true, wmlName + cplexExportFormat, model.getAbsolutePath(), input_data, null, minimize, new AbortCheck());
+                } else if (isAborted()) {
+                    logger.info("The aborter is aborted, the model is not sent.");
+                    return new Solution(CplexStatus.AbortUser.getValue());
+                } else if (submitOnly) {
+                    submitted = wmlConnector.submitEngineJobAsync(deploymentId, payload);
+                    return null;
                 } else
-                    return new Solution(CplexStatus.Unknown_Status);
+                    job = wmlConnector.createAndRunEngineJob(deploymentId, payload, new AbortCheck());
+                Solution solution = getSolution(job, numVars, numRanges);
+                solution.statistics.setJob(job);
+                logger.info("Solve statistics: " + solution.statistics);
+                return solution;
             } finally {
-                model.delete();
-                parameters.delete();
-                if (filters != null) filters.delete();
-                solution.delete();
                 if (job != null){
                     wmlConnector.deleteJob(job.getId());
                     job = null;
                 }
-                if (annotations != null) annotations.delete();
-                wmlConnector.close();
             }
         }
         catch (java.lang.Exception e) { throw new IloException(e.getMessage()); }
+        finally {
+            // Also when the export fails: the lookup must not outlive the connector.
+            pipeline.settle(deployment);
+            // A submitted job still needs the connector, it is released once the job is over.
+            if (submitted == null)
+                wmlConnector.close();
+        }
+    }
+
+    /**
+     * The job runs on the worker deployment, created from src/main/resources/worker/main.py, which populates the
+     * solution pool and returns it with the incumbent. Racers are not used.
+     */
+    @Override
+    protected Solution externalPopulate(int numVars, int numRanges) throws IloException {
+        populating = true;
+        try {
+            return externalSolve(numVars, numRanges, null, null);
+        } finally {
+            populating = false;
+        }
+    }
+
+    /**
+     * The job is submitted and tracked with the other asynchronous jobs, no thread waits for it.
+     * A raced solve is run to its end before returning. Cancelling the future deletes the job.
+     */
+    @Override
+    protected CompletableFuture<Solution> externalSubmit(int numVars, int numRanges, Executor executor) throws IloException {
+        submitOnly = true;
+        try {
+            Solution solution = externalSolve(numVars, numRanges, null, null);
+            if (submitted == null)
+                return CompletableFuture.completedFuture(solution);
+            return LinkedFuture.of(submitted, submitted.handleAsync(new Completion(numVars, numRanges), executor));
+        } finally {
+            submitOnly = false;
+            submitted = null;
+        }
+    }
+
+    /* Reads the solution of a submitted job, then deletes the job and releases the connector. */
+    private class Completion implements BiFunction<Job, Throwable, Solution> {
+        private final int numVars;
+        private final int numRanges;
+
+        Completion(int numVars, int numRanges) {
+            this.numVars = numVars;
+            this.numRanges = numRanges;
+        }
+
+        @Override
+        public Solution apply(Job job, Throwable error) {
+            try {
+                if (error != null)
+                    throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+                try {
+                    Solution solution = getSolution(job, numVars, numRanges);
+                    solution.statistics.setJob(job);
+                    logger.info("Solve statistics: " + solution.statistics);
+                    return solution;
+                } finally {
+                    wmlConnector.deleteJob(job.getId());
+                }
+            } catch (IloException | IOException e) {
+                throw new CompletionException(e);
+            } finally {
+                wmlConnector.close();
+            }
+        }
+    }
+
+    private Solution getSolution(Job job, int numVars, int numRanges) throws IloException, IOException {
+        if (job.hasSolveState()) {
+            logger.info("SolveStatus = " + job.getSolveStatus());
+        } else if (isAborted()) {
+            logger.info("The solve was aborted before a solution was found.");
+            return new Solution(CplexStatus.AbortUser.getValue());
+        } else {
+            throw new IloException(job.getJobStatus().toString());
+        }
+        if (job.getSolveStatus().equals("infeasible_solution")) {
+            return new Solution(IloCplex.CplexStatus.Infeasible_Status);
+        }
+        InputStream sol = job.getSolutionStream();
+        if (sol != null) {
+            // We have a feasible solution. Parse it while it is decoded, the text is only kept for the MIP warm start.
+            try {
+                return new Solution(sol, numVars, numRanges, isMIP());
+            } finally {
+                sol.close();
+            }
+        } else
+            return new Solution(CplexStatus.Unknown_Status);
     }
 }
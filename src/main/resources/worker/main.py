@@ -0,0 +1,191 @@
+# --------------------------------------------------------------------------
+# Source file provided under Apache License, Version 2.0, January 2004,
+# http://www.apache.org/licenses/
+#
+# Worker of WmlCplex for what the stock CPLEX deployments cannot do: populating the solution pool, and applying
+# the changes of a delta solve to the base model. The connector deploys it as a do-docplex model, see
+# Connector.getOrMakeWorkerDeployment.
+#
+# Inputs, in the working directory, each one possibly gzipped (.gz):
+#   <name>.sav, .lp or .mps     the model, or the base model of a delta solve, given as a data reference
+#   <name>.delta                the changes to apply to the base model, see the format in CPLEX.md
+#   <name>.prm                  the parameters
+#   <name>.mst, .flt, .ann      the MIP starts, filters and annotations
+#   <name>.sol                  the previous solution, used as a start
+#   <name>.populate             present to populate the solution pool instead of solving
+# Output:
+#   solution.xml                the incumbent, as written by CPLEX. After a populate, a CPLEXSolutions document with
+#                               the incumbent first, then the solutions of the pool (solutionIndex 0, 1...).
+# --------------------------------------------------------------------------
+import glob
+import gzip
+import os
+import shutil
+import xml.etree.ElementTree as ET
+
+import cplex
+
+MODEL_SUFFIXES = ('.sav', '.lp', '.mps')
+MIP_TYPES = ('MILP', 'MIQP', 'MIQCP', 'fixedMILP', 'fixedMIQP')
+
+
+def gunzip_inputs():
+    for name in glob.glob('*.gz'):
+        with gzip.open(name, 'rb') as src, open(name[:-3], 'wb') as dst:
+            shutil.copyfileobj(src, dst)
+
+
+def find(suffix):
+    found = [f for f in glob.glob('*' + suffix) if not f.endswith('.gz')]
+    return found[0] if found else None
+
+
+def find_model():
+    for suffix in MODEL_SUFFIXES:
+        model = find(suffix)
+        if model is not None:
+            return model
+    raise Exception('No model in the inputs: ' + str(os.listdir('.')))
+
+
+def is_mip(cpx):
+    return cpx.problem_type[cpx.get_problem_type()] in MIP_TYPES
+
+
+def bound(value):
+    # The bounds at or beyond the CPLEX infinity, like the Java Double.MAX_VALUE, are infinite.
+    value = float(value)
+    if value >= cplex.infinity:
+        return cplex.infinity
+    if value <= -cplex.infinity:
+        return -cplex.infinity
+    return value
+
+
+def get_row_bounds(cpx, name):
+    sense = cpx.linear_constraints.get_senses(name)
+    rhs = cpx.linear_constraints.get_rhs(name)
+    if sense == 'L':
+        return -cplex.infinity, rhs
+    if sense == 'G':
+        return rhs, cplex.infinity
+    if sense == 'E':
+        return rhs, rhs
+    # A ranged row goes from rhs to rhs + range, or from rhs + range to rhs for a negative range.
+    other = rhs + cpx.linear_constraints.get_range_values(name)
+    return min(rhs, other), max(rhs, other)
+
+
+def set_row_bounds(cpx, name, lb, ub):
+    if lb == ub:
+        sense, rhs, width = 'E', lb, 0.0
+    elif lb <= -cplex.infinity:
+        sense, rhs, width = 'L', ub, 0.0
+    elif ub >= cplex.infinity:
+        sense, rhs, width = 'G', lb, 0.0
+    else:
+        sense, rhs, width = 'R', lb, ub - lb
+    cpx.linear_constraints.set_senses(name, sense)
+    cpx.linear_constraints.set_rhs(name, rhs)
+    cpx.linear_constraints.set_range_values(name, width)
+
+
+def apply_delta(cpx, delta):
+    # One change per line: LB, UB, RLB, RUB, OBJ <name> <value> or OBJCONST <value>.
+    rows = {}
+    with open(delta) as changes:
+        for line in changes:
+            fields = line.split()
+            if not fields:
+                continue
+            kind = fields[0]
+            if kind == 'LB':
+                cpx.variables.set_lower_bounds(fields[1], bound(fields[2]))
+            elif kind == 'UB':
+                cpx.variables.set_upper_bounds(fields[1], bound(fields[2]))
+            elif kind == 'RLB' or kind == 'RUB':
+                if fields[1] not in rows:
+                    rows[fields[1]] = list(get_row_bounds(cpx, fields[1]))
+                rows[fields[1]][0 if kind == 'RLB' else 1] = bound(fields[2])
+            elif kind == 'OBJ':
+                cpx.objective.set_linear(fields[1], float(fields[2]))
+            elif kind == 'OBJCONST':
+                cpx.objective.set_offset(float(fields[1]))
+            else:
+                raise Exception('Unknown change in ' + delta + ': ' + line)
+    # Both bounds of a range are set at once, the sense of the row depends on them.
+    for name, (lb, ub) in rows.items():
+        set_row_bounds(cpx, name, lb, ub)
+
+
+def read_inputs(cpx):
+    cpx.read(find_model())
+    delta = find('.delta')
+    if delta is not None:
+        apply_delta(cpx, delta)
+    prm = find('.prm')
+    if prm is not None:
+        cpx.parameters.read_file(prm)
+    if is_mip(cpx):
+        sol = find('.sol')
+        if sol is not None:
+            cpx.start.read_start(sol)
+        mst = find('.mst')
+        if mst is not None:
+            cpx.MIP_starts.read(mst)
+        flt = find('.flt')
+        if flt is not None:
+            cpx.solution.pool.filter.read(flt)
+    ann = find('.ann')
+    if ann is not None:
+        cpx.read_annotations(ann)
+
+
+def write_pool(cpx, name):
+    # The incumbent first, then the pool, in one CPLEXSolutions document.
+    cpx.solution.write('incumbent.sol')
+    cpx.solution.pool.write('pool.sol')
+    root = ET.Element('CPLEXSolutions', version='1.2')
+    root.append(ET.parse('incumbent.sol').getroot())
+    pool = ET.parse('pool.sol').getroot()
+    for solution in (pool if pool.tag == 'CPLEXSolutions' else [pool]):
+        root.append(solution)
+    ET.ElementTree(root).write(name, encoding='UTF-8', xml_declaration=True)
+
+
+def notify(cpx):
+    # The status of the job, as for the stock deployments.
+    try:
+        from docplex.util.environment import get_environment
+        from docplex.util.status import JobSolveStatus
+        if not cpx.solution.is_primal_feasible():
+            status = JobSolveStatus.INFEASIBLE_SOLUTION
+        elif cpx.solution.get_status() in (cpx.solution.status.optimal, cpx.solution.status.MIP_optimal,
+                                           cpx.solution.status.optimal_tolerance):
+            status = JobSolveStatus.OPTIMAL_SOLUTION
+        else:
+            status = JobSolveStatus.FEASIBLE_SOLUTION
+        get_environment().notify_end_solve(status)
+    except ImportError:
+        pass
+
+
+def main():
+    gunzip_inputs()
+    cpx = cplex.Cplex()
+    read_inputs(cpx)
+    populate = find('.populate') is not None
+    if populate and is_mip(cpx):
+        cpx.populate_solution_pool()
+    else:
+        cpx.solve()
+    notify(cpx)
+    if not cpx.solution.is_primal_feasible():
+        return
+    if populate and cpx.solution.pool.get_num() > 0:
+        write_pool(cpx, 'solution.xml')
+    else:
+        cpx.solution.write('solution.xml')
+
+
+main()
@@ -0,0 +1,122 @@
+package com.ibm.ml.ilog.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+public class TestPayloadEntity extends TestCase {
+
+	private static final byte[] PREFIX = "{\"content\":\"".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] SUFFIX = "\"}".getBytes(StandardCharsets.UTF_8);
+
+	private File file;
+	// More than the 64K buffer of the entity, and not a multiple of 3.
+	private final byte[] model = new byte[200001];
+
+	public void setUp() throws IOException {
+		for (int i = 0; i < model.length; i++)
+			model[i] = (byte) ("Minimize obj: x + 2 y\n".charAt(i % 22) + i / 1000);
+		file = File.createTempFile("payload", ".lp");
+		Files.write(file.toPath(), model);
+	}
+
+	/**
+	 * Tear-down testing environment
+	 */
+
+	public void tearDown() {
+		file.delete();
+	}
+
+	private static byte[] write(PayloadEntity entity) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+		return out.toByteArray();
+	}
+
+	/* The model, base64 decoded from the payload. */
+	private static byte[] decode(byte[] payload) {
+		assertTrue(startsWith(payload, PREFIX));
+		assertTrue(startsWith(Arrays.copyOfRange(payload, payload.length - SUFFIX.length, payload.length), SUFFIX));
+		return Base64.getDecoder().decode(Arrays.copyOfRange(payload, PREFIX.length, payload.length - SUFFIX.length));
+	}
+
+	private static boolean startsWith(byte[] bytes, byte[] prefix) {
+		return bytes.length >= prefix.length && Arrays.equals(Arrays.copyOf(bytes, prefix.length), prefix);
+	}
+
+	private static byte[] gunzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	/*----------------------------------------------------------------------------
+	Test methods
+	----------------------------------------------------------------------------*/
+
+	public void testFile() throws IOException {
+		PayloadEntity entity = new PayloadEntity(PREFIX, file.toPath(), SUFFIX);
+		byte[] payload = write(entity);
+		assertTrue(Arrays.equals(model, decode(payload)));
+		assertEquals(payload.length, entity.getContentLength());
+		assertFalse(entity.isChunked());
+	}
+
+	public void testBuffer() throws IOException {
+		// Only the first bytes of the buffer are the model.
+		int length = 150001;
+		PayloadEntity entity = new PayloadEntity(PREFIX, model, length, false, SUFFIX);
+		byte[] payload = write(entity);
+		assertTrue(Arrays.equals(Arrays.copyOf(model, length), decode(payload)));
+		assertEquals(payload.length, entity.getContentLength());
+		assertEquals(4 * ((length + 2) / 3), entity.getEncodedLength());
+	}
+
+	public void testEmptyBuffer() throws IOException {
+		PayloadEntity entity = new PayloadEntity(PREFIX, model, 0, false, SUFFIX);
+		byte[] payload = write(entity);
+		assertEquals(0, decode(payload).length);
+		assertEquals(PREFIX.length + SUFFIX.length, entity.getContentLength());
+	}
+
+	public void testGzip() throws IOException {
+		PayloadEntity entity = new PayloadEntity(PREFIX, model, model.length, true, SUFFIX);
+		assertTrue(entity.isChunked());
+		assertEquals(-1, entity.getContentLength());
+		assertEquals(-1, entity.getEncodedLength());
+		byte[] payload = write(entity);
+		byte[] gzipped = decode(payload);
+		assertTrue(gzipped.length < model.length);
+		assertTrue(Arrays.equals(model, gunzip(gzipped)));
+	}
+
+	public void testRepeatable() throws IOException {
+		PayloadEntity entity = new PayloadEntity(PREFIX, model, model.length, true, SUFFIX);
+		assertTrue(entity.isRepeatable());
+		byte[] first = write(entity);
+		assertTrue(Arrays.equals(first, write(entity)));
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		try (InputStream in = entity.getContent()) {
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				content.write(buffer, 0, read);
+		}
+		assertTrue(Arrays.equals(first, content.toByteArray()));
+	}
+}
@@ -0,0 +1,70 @@
+package com.ibm.ml.ilog.utils;
+
+import junit.framework.TestCase;
+
+public class TestPollingStrategy extends TestCase {
+
+	/*----------------------------------------------------------------------------
+	Test methods
+	----------------------------------------------------------------------------*/
+
+	public void testExponentialBackoff() {
+		PollingStrategy strategy = new PollingStrategy(100, 1000, 2.0, 0.0);
+		assertEquals(100, strategy.getDelay(0));
+		assertEquals(200, strategy.getDelay(1));
+		assertEquals(400, strategy.getDelay(2));
+		assertEquals(800, strategy.getDelay(3));
+		assertEquals(1000, strategy.getDelay(4));
+		assertEquals(1000, strategy.getDelay(5));
+	}
+
+	public void testConstantDelay() {
+		PollingStrategy strategy = new PollingStrategy(500, 500, 1.0, 0.0);
+		for (int attempt = 0; attempt < 10; attempt++)
+			assertEquals(500, strategy.getDelay(attempt));
+	}
+
+	public void testLateAttemptsAtMaxDelay() {
+		// The factor overflows to infinity, which must still give the max delay.
+		PollingStrategy strategy = new PollingStrategy(100, 30000, 1.5, 0.0);
+		assertEquals(30000, strategy.getDelay(5000));
+		assertEquals(30000, strategy.getDelay(Integer.MAX_VALUE));
+	}
+
+	public void testJitter() {
+		PollingStrategy strategy = new PollingStrategy(1000, 100000, 1.0, 0.2);
+		boolean varies = false;
+		long first = strategy.getDelay(0);
+		for (int i = 0; i < 1000; i++) {
+			long delay = strategy.getDelay(0);
+			assertTrue("Delay " + delay + " out of the jitter", delay >= 800 && delay <= 1200);
+			varies |= delay != first;
+		}
+		assertTrue(varies);
+	}
+
+	public void testJitterWithinMaxDelay() {
+		PollingStrategy strategy = new PollingStrategy(1000, 4000, 2.0, 0.5);
+		for (int i = 0; i < 1000; i++) {
+			long delay = strategy.getDelay(5);
+			assertTrue("Delay " + delay + " over the max", delay >= 1 && delay <= 4000);
+		}
+	}
+
+	public void testBadStrategies() {
+		assertBad(0, 1000, 2.0, 0.0);
+		assertBad(1000, 100, 2.0, 0.0);
+		assertBad(100, 1000, 0.5, 0.0);
+		assertBad(100, 1000, 2.0, -0.1);
+		assertBad(100, 1000, 2.0, 1.0);
+	}
+
+	private static void assertBad(long initialDelay, long maxDelay, double factor, double jitter) {
+		try {
+			new PollingStrategy(initialDelay, maxDelay, factor, jitter);
+			fail("Accepted " + initialDelay + ", " + maxDelay + ", " + factor + ", " + jitter);
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
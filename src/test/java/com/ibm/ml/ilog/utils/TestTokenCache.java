@@ -0,0 +1,62 @@
+package com.ibm.ml.ilog.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+public class TestTokenCache extends TestCase {
+
+	private File directory;
+	private final byte[] name = new byte[32];
+
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("tokens").toFile();
+	}
+
+	/**
+	 * Tear-down testing environment
+	 */
+
+	public void tearDown() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File f : files)
+				f.delete();
+		}
+		directory.delete();
+	}
+
+	/*----------------------------------------------------------------------------
+	Test methods
+	----------------------------------------------------------------------------*/
+
+	public void testSameCredentials() {
+		new TokenCache(directory, name, "iam\nhost\nurl\nkey1").save(new TokenManager.Token("abc.def.ghi", 5, 123456789L));
+		TokenManager.Token token = new TokenCache(directory, name, "iam\nhost\nurl\nkey1").load();
+		assertNotNull(token);
+		assertEquals("abc.def.ghi", token.value);
+		assertEquals(123456789L, token.expiresAt);
+		assertEquals(0, token.refreshAt);
+	}
+
+	public void testOtherCredentials() {
+		new TokenCache(directory, name, "iam\nhost\nurl\nkey1").save(new TokenManager.Token("abc.def.ghi", 5, 123456789L));
+		// Same file name, so only the key differs.
+		assertNull(new TokenCache(directory, name, "iam\nhost\nurl\nkey2").load());
+	}
+
+	public void testSaltPerFile() throws IOException {
+		new TokenCache(directory, name, "iam\nhost\nurl\nkey1").save(new TokenManager.Token("abc.def.ghi", 5, 123456789L));
+		byte[] first = Files.readAllBytes(directory.listFiles()[0].toPath());
+		tearDown();
+		setUp();
+		new TokenCache(directory, name, "iam\nhost\nurl\nkey1").save(new TokenManager.Token("abc.def.ghi", 5, 123456789L));
+		byte[] second = Files.readAllBytes(directory.listFiles()[0].toPath());
+		boolean sameSalt = true;
+		for (int i = 0; i < 16; i++)
+			sameSalt &= first[i] == second[i];
+		assertFalse(sameSalt);
+	}
+}
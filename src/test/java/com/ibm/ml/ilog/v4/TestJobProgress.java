@@ -0,0 +1,99 @@
+package com.ibm.ml.ilog.v4;
+
+import com.ibm.json.java.JSONArray;
+import com.ibm.json.java.JSONObject;
+
+import junit.framework.TestCase;
+
+public class TestJobProgress extends TestCase {
+
+	private JobProgress progress;
+
+	public void setUp() {
+		progress = new JobProgress("job-1");
+	}
+
+	private static JSONObject details(Object... keyValues) {
+		JSONObject ret = new JSONObject();
+		for (int i = 0; i < keyValues.length; i += 2)
+			ret.put(keyValues[i], keyValues[i + 1]);
+		return ret;
+	}
+
+	/*----------------------------------------------------------------------------
+	Test methods
+	----------------------------------------------------------------------------*/
+
+	public void testNoSolveState() {
+		progress.update("queued", null, null);
+		assertEquals("job-1", progress.getJobId());
+		assertEquals("queued", progress.getState());
+		assertTrue(Double.isNaN(progress.getObjective()));
+		assertTrue(Double.isNaN(progress.getBestBound()));
+		assertTrue(Double.isNaN(progress.getGap()));
+		assertEquals(-1, progress.getTimeSinceImprovement());
+		assertEquals(0, progress.getNumKPIs());
+		assertEquals(0, progress.getNumLogLines());
+	}
+
+	public void testObjectives() {
+		progress.update("running", details("PROGRESS_CURRENT_OBJECTIVE", 10.0, "PROGRESS_BEST_OBJECTIVE", 8.0, "PROGRESS_GAP", 0.25), null);
+		assertEquals(10.0, progress.getObjective(), 1e-12);
+		assertEquals(8.0, progress.getBestBound(), 1e-12);
+		assertEquals(0.25, progress.getGap(), 1e-12);
+		assertTrue(progress.getTimeSinceImprovement() >= 0);
+	}
+
+	public void testComputedGap() {
+		progress.update("running", details("PROGRESS_CURRENT_OBJECTIVE", 10.0, "PROGRESS_BEST_OBJECTIVE", 8.0), null);
+		assertEquals(0.2, progress.getGap(), 1e-9);
+	}
+
+	public void testStringValues() {
+		progress.update("running", details("PROGRESS_CURRENT_OBJECTIVE", "12.5", "PROGRESS_BEST_OBJECTIVE", "not a number"), null);
+		assertEquals(12.5, progress.getObjective(), 1e-12);
+		assertTrue(Double.isNaN(progress.getBestBound()));
+		assertTrue(Double.isNaN(progress.getGap()));
+	}
+
+	public void testKPIs() {
+		progress.update("running", details("KPI.cost", 5L, "KPI.name", "best", "PROGRESS_GAP", 0.1), null);
+		assertEquals(2, progress.getNumKPIs());
+		assertEquals(5.0, progress.getKPI("cost"), 1e-12);
+		assertTrue(Double.isNaN(progress.getKPI("name")));
+		assertTrue(Double.isNaN(progress.getKPI("unknown")));
+		int name = progress.getKPIName(0).equals("name") ? 0 : 1;
+		assertEquals("best", progress.getKPIValue(name));
+
+		// Refilled at each update.
+		progress.update("running", details("KPI.cost", 4L), null);
+		assertEquals(1, progress.getNumKPIs());
+		assertEquals("cost", progress.getKPIName(0));
+		assertEquals(4.0, progress.getKPI("cost"), 1e-12);
+		assertTrue(Double.isNaN(progress.getGap()));
+	}
+
+	public void testImprovement() throws InterruptedException {
+		progress.update("running", details("PROGRESS_CURRENT_OBJECTIVE", 10.0), null);
+		Thread.sleep(20);
+		progress.update("running", details("PROGRESS_CURRENT_OBJECTIVE", 10.0), null);
+		assertTrue(progress.getTimeSinceImprovement() >= 20);
+		progress.update("running", details("PROGRESS_CURRENT_OBJECTIVE", 9.0), null);
+		assertEquals(0, progress.getTimeSinceImprovement());
+	}
+
+	public void testLog() {
+		JSONArray log = new JSONArray();
+		log.add("Iteration 1");
+		log.add("Iteration 2");
+		progress.update("running", details(), log);
+		assertEquals(2, progress.getNumLogLines());
+		assertEquals("Iteration 2", progress.getLogLine(1));
+	}
+
+	public void testAbort() {
+		assertFalse(progress.isAborted());
+		progress.abort();
+		assertTrue(progress.isAborted());
+	}
+}
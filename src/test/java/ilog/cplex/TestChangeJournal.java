@@ -0,0 +1,230 @@
+package ilog.cplex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import ilog.concert.IloException;
+import ilog.concert.IloLPMatrix;
+import ilog.concert.IloLinearNumExpr;
+import ilog.concert.IloLinearNumExprIterator;
+import ilog.concert.IloNumVar;
+import ilog.concert.IloObjective;
+import ilog.concert.IloObjectiveSense;
+import ilog.concert.IloRange;
+import junit.framework.TestCase;
+
+/*
+The changes of a delta solve, applied to the exported base model as the worker does, must give the modified model.
+ */
+public class TestChangeJournal extends TestCase {
+
+	private IloCplex model;
+	private IloNumVar x, y, z;
+	private IloRange c1, c2, c3;
+	private final OrdinalRegistry<IloNumVar> variables = new OrdinalRegistry<>("vv");
+	private final OrdinalRegistry<IloRange> ranges = new OrdinalRegistry<>("cc");
+	private final ChangeJournal journal = new ChangeJournal();
+	private File directory;
+
+	public void setUp() throws IloException, IOException {
+		directory = Files.createTempDirectory("delta").toFile();
+		model = new IloCplex();
+		x = model.numVar(0, 10, "x");
+		y = model.numVar(0, 20, "y");
+		z = model.intVar(0, 5, "z");
+		c1 = model.addLe(linear(0, 1, x, 1, y), 15, "c1");
+		// With a constant, which is moved to the bounds by the export.
+		c2 = model.addGe(linear(3, 2, x, 1, z), 4, "c2");
+		c3 = model.addRange(1, linear(0, 1, y, -1, z), 8, "c3");
+		model.addMinimize(linear(0, 1, x, 3, y));
+		for (IloNumVar v : new IloNumVar[]{x, y, z})
+			variables.add(v);
+		for (IloRange r : new IloRange[]{c1, c2, c3})
+			ranges.add(r);
+		journal.setBase(variables, ranges, 0, model.getObjective());
+	}
+
+	/**
+	 * Tear-down testing environment
+	 */
+
+	public void tearDown() {
+		model.end();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File f : files)
+				f.delete();
+		}
+		directory.delete();
+	}
+
+	private IloLinearNumExpr linear(double constant, double a, IloNumVar u, double b, IloNumVar v) throws IloException {
+		IloLinearNumExpr expr = model.linearNumExpr(constant);
+		expr.addTerm(a, u);
+		expr.addTerm(b, v);
+		return expr;
+	}
+
+	private String getChanges() throws IloException {
+		byte[] changes = journal.getChanges(variables, ranges, 0, model.getObjective());
+		return changes == null ? null : new String(changes, StandardCharsets.UTF_8);
+	}
+
+	/* Exports the model with the synthetic names, as a solve does. */
+	private File export(String name) throws IloException {
+		File file = new File(directory, name);
+		variables.renameAll();
+		ranges.renameAll();
+		try {
+			model.exportModel(file.getAbsolutePath());
+		} finally {
+			variables.restore();
+			ranges.restore();
+		}
+		return file;
+	}
+
+	/* Applies the changes to the imported base model, following the format of CPLEX.md. */
+	private static void apply(IloCplex base, String changes) throws IloException {
+		IloLPMatrix matrix = (IloLPMatrix) base.LPMatrixIterator().next();
+		Map<String, IloNumVar> vars = new HashMap<>();
+		for (IloNumVar v : matrix.getNumVars())
+			vars.put(v.getName(), v);
+		Map<String, IloRange> rows = new HashMap<>();
+		for (IloRange r : matrix.getRanges())
+			rows.put(r.getName(), r);
+		IloObjective objective = base.getObjective();
+		for (String line : changes.split("\n")) {
+			if (line.isEmpty())
+				continue;
+			String[] fields = line.split(" ");
+			switch (fields[0]) {
+				case "LB":
+					vars.get(fields[1]).setLB(Double.parseDouble(fields[2]));
+					break;
+				case "UB":
+					vars.get(fields[1]).setUB(Double.parseDouble(fields[2]));
+					break;
+				case "RLB":
+					rows.get(fields[1]).setLB(Double.parseDouble(fields[2]));
+					break;
+				case "RUB":
+					rows.get(fields[1]).setUB(Double.parseDouble(fields[2]));
+					break;
+				case "OBJ":
+					base.setLinearCoef(objective, Double.parseDouble(fields[2]), vars.get(fields[1]));
+					break;
+				case "OBJCONST":
+					IloLinearNumExpr expr = (IloLinearNumExpr) objective.getExpr();
+					expr.setConstant(Double.parseDouble(fields[1]));
+					objective.setExpr(expr);
+					break;
+				default:
+					fail("Unknown change " + line);
+			}
+		}
+	}
+
+	private static Map<String, Double> getObjCoefs(IloObjective objective) throws IloException {
+		Map<String, Double> ret = new HashMap<>();
+		IloLinearNumExprIterator it = ((IloLinearNumExpr) objective.getExpr()).linearIterator();
+		while (it.hasNext()) {
+			String name = it.nextNumVar().getName();
+			ret.put(name, it.getValue());
+		}
+		return ret;
+	}
+
+	/*----------------------------------------------------------------------------
+	Test methods
+	----------------------------------------------------------------------------*/
+
+	public void testRoundTrip() throws IloException {
+		File base = export("base.sav");
+
+		x.setUB(8);
+		z.setLB(1);
+		c1.setUB(12);
+		c2.setLB(5);
+		c3.setBounds(2, 7);
+		model.getObjective().setExpr(linear(2.5, 1, x, 4, y));
+
+		String changes = getChanges();
+		assertNotNull(changes);
+		IloCplex patched = new IloCplex();
+		try {
+			patched.importModel(base.getAbsolutePath());
+			apply(patched, changes);
+
+			IloLPMatrix matrix = (IloLPMatrix) patched.LPMatrixIterator().next();
+			Map<String, IloNumVar> vars = new HashMap<>();
+			for (IloNumVar v : matrix.getNumVars())
+				vars.put(v.getName(), v);
+			for (int i = 0; i < variables.size(); i++) {
+				IloNumVar v = vars.get(variables.getName(i));
+				assertEquals(variables.get(i).getLB(), v.getLB(), 1e-9);
+				assertEquals(variables.get(i).getUB(), v.getUB(), 1e-9);
+			}
+			Map<String, IloRange> rows = new HashMap<>();
+			for (IloRange r : matrix.getRanges())
+				rows.put(r.getName(), r);
+			for (int i = 0; i < ranges.size(); i++) {
+				IloRange r = ranges.get(i);
+				double constant = ((IloLinearNumExpr) r.getExpr()).getConstant();
+				IloRange row = rows.get(ranges.getName(i));
+				assertEquals(r.getLB() - constant, row.getLB(), 1e-9);
+				assertEquals(r.getUB() - constant, row.getUB(), 1e-9);
+			}
+
+			Map<String, Double> coefs = getObjCoefs(patched.getObjective());
+			assertEquals(1.0, coefs.get(variables.getName(0)), 1e-9);
+			assertEquals(4.0, coefs.get(variables.getName(1)), 1e-9);
+			assertEquals(2.5, ((IloLinearNumExpr) patched.getObjective().getExpr()).getConstant(), 1e-9);
+		} finally {
+			patched.end();
+		}
+	}
+
+	public void testNoChange() throws IloException {
+		assertEquals("", getChanges());
+	}
+
+	public void testBoundChanges() throws IloException {
+		x.setLB(1);
+		c2.setLB(6);
+		assertEquals("LB vv1 1.0\nRLB cc2 3.0\n", getChanges());
+	}
+
+	public void testObjectiveChanges() throws IloException {
+		// Same coefficients, new constant.
+		model.getObjective().setExpr(linear(1.5, 1, x, 3, y));
+		assertEquals("OBJCONST 1.5\n", getChanges());
+		model.setLinearCoef(model.getObjective(), 5, z);
+		assertEquals("OBJ vv3 5.0\nOBJCONST 1.5\n", getChanges());
+	}
+
+	public void testInfiniteBounds() throws IloException {
+		x.setUB(Double.MAX_VALUE);
+		c1.setUB(Double.MAX_VALUE);
+		c3.setLB(-Double.MAX_VALUE);
+		assertEquals("UB vv1 1.7976931348623157E308\nRUB cc1 1.7976931348623157E308\nRLB cc3 -1.7976931348623157E308\n", getChanges());
+	}
+
+	public void testCoefficientChange() throws IloException {
+		model.setLinearCoef(c1, 2, x);
+		assertNull(getChanges());
+	}
+
+	public void testStructureChange() throws IloException {
+		assertNull(journal.getChanges(variables, ranges, 1, model.getObjective()));
+	}
+
+	public void testObjectiveSense() throws IloException {
+		model.getObjective().setSense(IloObjectiveSense.Maximize);
+		assertNull(getChanges());
+	}
+}
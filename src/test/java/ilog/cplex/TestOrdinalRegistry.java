@@ -0,0 +1,117 @@
+package ilog.cplex;
+
+import ilog.concert.IloAddable;
+import ilog.concert.IloException;
+import junit.framework.TestCase;
+
+public class TestOrdinalRegistry extends TestCase {
+
+	/* A named object, as the variables and ranges of a model. */
+	private static class Named implements IloAddable {
+		private String name;
+
+		Named(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+	private final OrdinalRegistry<Named> registry = new OrdinalRegistry<>("vv");
+
+	/*----------------------------------------------------------------------------
+	Test methods
+	----------------------------------------------------------------------------*/
+
+	public void testOrdinals() {
+		Named x = new Named("x");
+		Named y = new Named(null);
+		assertEquals(0, registry.add(x));
+		assertEquals(1, registry.add(y));
+		assertEquals(0, registry.add(x));
+		assertEquals(2, registry.size());
+		assertEquals(1, registry.getOrdinal(y));
+		assertEquals(-1, registry.getOrdinal(new Named("x")));
+		assertSame(y, registry.get(1));
+	}
+
+	public void testSyntheticNames() {
+		for (int i = 0; i < 40; i++)
+			registry.add(new Named(null));
+		assertEquals("vv1", registry.getName(0));
+		assertEquals("vva", registry.getName(9));
+		assertEquals("vv10", registry.getName(15));
+		assertEquals("vv28", registry.getName(39));
+		assertEquals(39, ExternalCplex.Solution.getIndex(registry.getName(39), 'v', 40));
+	}
+
+	public void testRenameRestore() throws IloException {
+		Named x = new Named("x");
+		Named y = new Named(null);
+		registry.add(x);
+		registry.add(y);
+		registry.renameAll();
+		assertEquals("vv1", x.getName());
+		assertEquals("vv2", y.getName());
+		registry.restore();
+		assertEquals("x", x.getName());
+		// An unnamed object does not keep its synthetic name.
+		assertNull(y.getName());
+	}
+
+	public void testLateRename() throws IloException {
+		Named x = new Named("x");
+		registry.add(x);
+		registry.renameAll();
+		registry.restore();
+		// Named by the user between two solves: renamed again, then restored to the new name.
+		x.setName("late");
+		registry.renameAll();
+		assertEquals("vv1", x.getName());
+		registry.restore();
+		assertEquals("late", x.getName());
+	}
+
+	public void testSyntheticNameKept() throws IloException {
+		// An object which already has its synthetic name is not recorded, so restore keeps it.
+		Named x = new Named("vv1");
+		registry.add(x);
+		registry.renameAll();
+		registry.restore();
+		assertEquals("vv1", x.getName());
+	}
+
+	public void testRestoreOnce() throws IloException {
+		Named x = new Named("x");
+		registry.add(x);
+		registry.renameAll();
+		registry.restore();
+		x.setName("other");
+		// Nothing left to restore.
+		registry.restore();
+		assertEquals("other", x.getName());
+	}
+
+	public void testClear() throws IloException {
+		Named x = new Named("x");
+		registry.add(x);
+		registry.clear();
+		assertEquals(0, registry.size());
+		assertEquals(-1, registry.getOrdinal(x));
+		Named y = new Named("y");
+		assertEquals(0, registry.add(y));
+		registry.renameAll();
+		assertEquals("x", x.getName());
+		assertEquals("vv1", y.getName());
+		registry.restore();
+		assertEquals("y", y.getName());
+	}
+}
@@ -0,0 +1,160 @@
+package ilog.cplex;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import ilog.concert.IloException;
+import junit.framework.TestCase;
+
+public class TestSolution extends TestCase {
+
+	private static final String SOLUTION = "<?xml version = \"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+			+ "<CPLEXSolution version=\"1.2\">\n"
+			+ " <header problemName=\"model\" objectiveValue=\"3.5\" solutionStatusValue=\"101\""
+			+ " solutionStatusString=\"integer optimal solution\" primalFeasible=\"1\" dualFeasible=\"0\""
+			+ " MIPNodes=\"7\" MIPIterations=\"42\"/>\n"
+			+ " <quality epInt=\"1.0000000000000001e-05\"/>\n"
+			+ " <linearConstraints>\n"
+			+ "  <constraint name=\"cc1\" index=\"0\" slack=\"0.25\" dual=\"1.5\"/>\n"
+			+ "  <constraint name=\"user\" index=\"1\" slack=\"9\"/>\n"
+			+ " </linearConstraints>\n"
+			+ " <variables>\n"
+			+ "  <variable name=\"vv1\" index=\"0\" value=\"1\" reducedCost=\"0.5\"/>\n"
+			+ "  <variable name=\"vv2\" index=\"1\" value=\"2\"/>\n"
+			+ "  <variable name=\"x\" index=\"2\" value=\"3\"/>\n"
+			+ " </variables>\n"
+			+ " <objectiveValues><objective index=\"0\" name=\"obj\" value=\"3.5\"/></objectiveValues>\n"
+			+ "</CPLEXSolution>\n";
+
+	private static String header(double objective, String index) {
+		return " <header objectiveValue=\"" + objective + "\" solutionStatusValue=\"129\" primalFeasible=\"1\""
+				+ (index == null ? "" : " solutionIndex=\"" + index + "\"") + "/>\n";
+	}
+
+	private static String solution(double objective, String index, double v1, double v2) {
+		return "<CPLEXSolution version=\"1.2\">\n" + header(objective, index)
+				+ " <variables>\n"
+				+ "  <variable name=\"vv1\" value=\"" + v1 + "\"/>\n"
+				+ "  <variable name=\"vv2\" value=\"" + v2 + "\"/>\n"
+				+ " </variables>\n"
+				+ "</CPLEXSolution>\n";
+	}
+
+	private static ExternalCplex.Solution parse(String xml, int numVars, int numRanges) throws IloException, IOException {
+		return new ExternalCplex.Solution(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), numVars, numRanges, true);
+	}
+
+	/*----------------------------------------------------------------------------
+	Test methods
+	----------------------------------------------------------------------------*/
+
+	public void testGetIndex() {
+		assertEquals(0, ExternalCplex.Solution.getIndex("vv1", 'v', 10));
+		assertEquals(9, ExternalCplex.Solution.getIndex("vva", 'v', 10));
+		assertEquals(255, ExternalCplex.Solution.getIndex("cc100", 'c', 256));
+		assertEquals(-1, ExternalCplex.Solution.getIndex("vvb", 'v', 10));
+		assertEquals(-1, ExternalCplex.Solution.getIndex("vv0", 'v', 10));
+		assertEquals(-1, ExternalCplex.Solution.getIndex("cc1", 'v', 10));
+		assertEquals(-1, ExternalCplex.Solution.getIndex("vx1", 'v', 10));
+		assertEquals(-1, ExternalCplex.Solution.getIndex("vv", 'v', 10));
+		assertEquals(-1, ExternalCplex.Solution.getIndex("vvz", 'v', 10));
+		assertEquals(-1, ExternalCplex.Solution.getIndex("vv123456789", 'v', Integer.MAX_VALUE));
+		assertEquals(-1, ExternalCplex.Solution.getIndex("x", 'v', 10));
+	}
+
+	public void testParse() throws IloException, IOException {
+		ExternalCplex.Solution solution = parse(SOLUTION, 3, 2);
+		assertTrue(solution.feasible);
+		assertEquals(3.5, solution.objective, 1e-12);
+		assertEquals(101, solution.status);
+		assertTrue(solution.pfeas);
+		assertFalse(solution.dfeas);
+		assertEquals(7, solution.statistics.getNnodes());
+		assertEquals(42, solution.statistics.getNiterations());
+		assertEquals(1.0, solution.values[0], 1e-12);
+		assertEquals(2.0, solution.values[1], 1e-12);
+		// Not named by the registry: not in the solution.
+		assertTrue(Double.isNaN(solution.values[2]));
+		assertEquals(0.5, solution.reducedCosts[0], 1e-12);
+		assertTrue(Double.isNaN(solution.reducedCosts[1]));
+		assertEquals(1.5, solution.duals[0], 1e-12);
+		assertEquals(0.25, solution.slacks[0], 1e-12);
+		assertEquals(0.0, solution.slacks[1], 1e-12);
+		assertEquals(1, solution.getPoolSize());
+		assertEquals(3.5, solution.getPoolObjective(0), 1e-12);
+		// The whole text is kept for the warm start.
+		assertEquals(SOLUTION, solution.getSolution());
+	}
+
+	public void testParseWithoutText() throws IloException, IOException {
+		ExternalCplex.Solution solution = new ExternalCplex.Solution(
+				new ByteArrayInputStream(SOLUTION.getBytes(StandardCharsets.UTF_8)), 3, 2, false);
+		assertTrue(solution.feasible);
+		assertFalse(solution.hasSolution());
+	}
+
+	public void testPool() throws IloException, IOException {
+		String xml = "<CPLEXSolutions version=\"1.2\">\n"
+				+ solution(10, null, 1, 2)
+				+ solution(10, "0", 1, 2)
+				+ solution(12, "1", 3, 4)
+				+ "</CPLEXSolutions>\n";
+		ExternalCplex.Solution solution = parse(xml, 2, 0);
+		assertEquals(10.0, solution.objective, 1e-12);
+		assertEquals(129, solution.status);
+		assertEquals(2, solution.getPoolSize());
+		assertEquals(12.0, solution.getPoolObjective(1), 1e-12);
+		assertEquals(3.0, solution.getPoolValues(1)[0], 1e-12);
+		assertEquals(4.0, solution.getPoolValues(1)[1], 1e-12);
+		// The incumbent is not changed by the pool.
+		assertEquals(1.0, solution.values[0], 1e-12);
+		try {
+			solution.getPoolValues(2);
+			fail("No solution 2 in the pool");
+		} catch (IloException e) {
+			// expected
+		}
+	}
+
+	public void testPoolWithoutIncumbent() throws IloException, IOException {
+		String xml = "<CPLEXSolutions version=\"1.2\">\n"
+				+ solution(10, "0", 1, 2)
+				+ solution(12, "1", 3, 4)
+				+ "</CPLEXSolutions>\n";
+		ExternalCplex.Solution solution = parse(xml, 2, 0);
+		assertEquals(10.0, solution.objective, 1e-12);
+		assertEquals(1.0, solution.values[0], 1e-12);
+		assertEquals(2, solution.getPoolSize());
+		assertEquals(10.0, solution.getPoolObjective(0), 1e-12);
+		assertEquals(2.0, solution.getPoolValues(0)[1], 1e-12);
+		assertEquals(12.0, solution.getPoolObjective(1), 1e-12);
+	}
+
+	public void testMalformed() throws IloException {
+		try {
+			parse("<CPLEXSolution version=\"1.2\">\n<variables><header/></variables></CPLEXSolution>", 2, 0);
+			fail("Malformed solution parsed");
+		} catch (IOException e) {
+			// expected
+		}
+		ExternalCplex.Solution solution = new ExternalCplex.Solution(0);
+		try {
+			solution.parse(new ByteArrayInputStream("<other/>".getBytes(StandardCharsets.UTF_8)), false);
+			fail("Unknown root element parsed");
+		} catch (IOException e) {
+			// expected
+		}
+		assertFalse(solution.feasible);
+		assertEquals(0, solution.getPoolSize());
+	}
+
+	public void testMissingObjective() throws IloException {
+		try {
+			parse("<CPLEXSolution version=\"1.2\">\n<header solutionStatusValue=\"1\"/></CPLEXSolution>", 2, 0);
+			fail("Solution without objective parsed");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}